@@ -0,0 +1,59 @@
+package com.theoryinpractise.coffeescript.benchmarks;
+
+import com.theoryinpractise.coffeescript.CoffeeScriptCompiler;
+import com.theoryinpractise.coffeescript.CompileResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single warm compiler on small, medium and large sources, with and without V3 source maps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+
+    @Param({"1.10.0"})
+    public String version;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"NONE", "V3"})
+    public CoffeeScriptCompiler.SourceMap sourceMap;
+
+    @Param({"RHINO", "GRAALJS"})
+    public CoffeeScriptCompiler.Engine engine;
+
+    private CoffeeScriptCompiler compiler;
+    private String source;
+
+    @Setup
+    public void setUp() {
+        compiler = new CoffeeScriptCompiler(version, engine, null);
+        source = Sources.generate(size);
+    }
+
+    @Benchmark
+    public CompileResult compile() {
+        CompileResult result = compiler.compile(source, "benchmark.coffee", false, sourceMap, false, false);
+        // Include encoding the map, as the mojo always writes it out
+        result.getMap();
+        return result;
+    }
+
+}
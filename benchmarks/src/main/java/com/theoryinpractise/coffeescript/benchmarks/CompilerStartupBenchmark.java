@@ -0,0 +1,38 @@
+package com.theoryinpractise.coffeescript.benchmarks;
+
+import com.theoryinpractise.coffeescript.CoffeeScriptCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to load each bundled version of the coffee-script compiler into a new Rhino scope, without the
+ * bytecode cache so the module compilation is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompilerStartupBenchmark {
+
+    @Param({"1.2.0", "1.3.1", "1.3.3", "1.4.0", "1.5.0", "1.6.1", "1.6.3", "1.7.1",
+            "1.8.0", "1.9.0", "1.9.1", "1.9.2", "1.9.3", "1.10.0"})
+    public String version;
+
+    @Benchmark
+    public CoffeeScriptCompiler construct() {
+        return new CoffeeScriptCompiler(version);
+    }
+
+}
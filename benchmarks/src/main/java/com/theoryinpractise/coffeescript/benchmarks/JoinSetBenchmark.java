@@ -0,0 +1,80 @@
+package com.theoryinpractise.coffeescript.benchmarks;
+
+import com.theoryinpractise.coffeescript.JoinSet;
+import com.theoryinpractise.coffeescript.SourceLoader;
+import org.apache.maven.model.FileSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning and concatenating the files of a JoinSet from disk, as done before each JoinSet is compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinSetBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int files;
+
+    private File directory;
+    private JoinSet joinSet;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("join-set-benchmark").toFile();
+        for (int i = 0; i < files; i++) {
+            Sources.write(directory, String.format("file%05d.coffee", i), Sources.generate(i, 2));
+        }
+
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(directory.getAbsolutePath());
+        fileSet.addInclude("**/*.coffee");
+
+        joinSet = new JoinSet();
+        joinSet.setId("benchmark");
+        joinSet.setFileSet(fileSet);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Sources.delete(directory);
+    }
+
+    @Benchmark
+    public String concatenate() throws IOException {
+        joinSet.reset();
+        return joinSet.getConcatenatedStringOfFiles();
+    }
+
+    /**
+     * As the mojo does it, preloading the files in parallel through a loader shared by every JoinSet.
+     */
+    @Benchmark
+    public String concatenateWithSharedLoader() throws IOException {
+        try (SourceLoader loader = new SourceLoader(Runtime.getRuntime().availableProcessors())) {
+            joinSet.reset();
+            loader.preload(joinSet.getFiles());
+            return joinSet.getConcatenatedStringOfFiles(loader);
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.theoryinpractise.coffeescript.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.theoryinpractise.coffeescript.ClosureMinifier;
+import com.theoryinpractise.coffeescript.CoffeeScriptCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minifying the compiled output of a medium sized project with the Closure Compiler at each compilation level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MinifierBenchmark {
+
+    @Param({"WHITESPACE_ONLY", "SIMPLE_OPTIMIZATIONS", "ADVANCED_OPTIMIZATIONS"})
+    public String compilationLevel;
+
+    @Param({"10"})
+    public int files;
+
+    private File directory;
+    private List<File> inputs;
+    private String destination;
+    private ClosureMinifier minifier;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("minifier-benchmark").toFile();
+        CoffeeScriptCompiler compiler = new CoffeeScriptCompiler("1.10.0");
+
+        inputs = Lists.newArrayList();
+        for (int i = 0; i < files; i++) {
+            String js = compiler.compile(Sources.generate(i, 20), "file" + i + ".coffee", false, CoffeeScriptCompiler.SourceMap.NONE, false, false).getJs();
+            inputs.add(Sources.write(directory, "file" + i + ".js", js));
+        }
+
+        destination = new File(directory, "output.min.js").getPath();
+        minifier = new ClosureMinifier(compilationLevel, new Sources.QuietLog());
+    }
+
+    @TearDown
+    public void tearDown() {
+        Sources.delete(directory);
+    }
+
+    @Benchmark
+    public void minify() {
+        minifier.compile(inputs, destination);
+    }
+
+}
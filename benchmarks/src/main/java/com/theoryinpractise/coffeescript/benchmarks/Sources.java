@@ -0,0 +1,97 @@
+package com.theoryinpractise.coffeescript.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Deterministic CoffeeScript sources shared by the benchmarks.
+ */
+final class Sources {
+
+    private Sources() {
+    }
+
+    /**
+     * A source file with the given number of classes, each using classes, comprehensions, interpolation,
+     * switch and the existential operator so every part of the compiler is exercised.
+     */
+    static String generate(int seed, int classes) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < classes; c++) {
+            String name = "Thing" + seed + "_" + c;
+            sb.append("class ").append(name).append("\n")
+              .append("  constructor: (@name, @items = []) ->\n")
+              .append("    @count = 0\n")
+              .append("  add: (item) ->\n")
+              .append("    @items.push item\n")
+              .append("    @count += 1\n")
+              .append("    this\n")
+              .append("  total: ->\n")
+              .append("    (x * 2 for x in @items when x > ").append(c).append(").reduce ((a, b) -> a + b), 0\n")
+              .append("  describe: ->\n")
+              .append("    \"#{@name} has #{@count} items: #{@items.join ', '}\"\n")
+              .append("  lookup: (key) ->\n")
+              .append("    switch key\n")
+              .append("      when 'a' then @items[0]\n")
+              .append("      when 'b' then @items[1]\n")
+              .append("      else @items?[2] ? null\n\n");
+        }
+        sb.append("helpers =\n")
+          .append("  square: (x) -> x * x\n")
+          .append("  cube: (x) -> x * x * x\n");
+        return sb.toString();
+    }
+
+    /**
+     * Roughly 40, 1,000 and 3,500 lines of CoffeeScript.
+     */
+    static String generate(String size) {
+        switch (size) {
+            case "small":
+                return generate(0, 2);
+            case "medium":
+                return generate(0, 60);
+            case "large":
+                return generate(0, 200);
+            default:
+                throw new IllegalArgumentException("Unknown source size: " + size);
+        }
+    }
+
+    static File write(File directory, String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Keeps the minifier's progress messages out of the benchmark output.
+     */
+    static class QuietLog extends SystemStreamLog {
+
+        @Override
+        public boolean isInfoEnabled() {
+            return false;
+        }
+
+        @Override
+        public void info(CharSequence content) {
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.theoryinpractise.coffeescript;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Shared configuration of the goals managing the compile daemon.
+ */
+public abstract class AbstractCompileDaemonMojo extends AbstractMojo {
+
+    /**
+     * Location of the state of the compile daemon, shared by every build using the same directory.
+     *
+     */
+    @Parameter(property = "daemonDirectory", defaultValue = "${user.home}/.coffee-maven-plugin/daemon")
+    protected File daemonDirectory;
+
+    protected void logStatus(String state, CompileDaemonClient client, CompileDaemon.Status status) {
+        getLog().info(String.format("Compile daemon %s (pid %s, port %d): up %d s, %d compilations, idle timeout %d s, compilers: %s",
+                                    state, status.pid, client.getPort(), status.uptimeSeconds, status.compilations,
+                                    status.idleTimeoutSeconds, status.compilers.isEmpty() ? "none" : String.join(", ", status.compilers)));
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.theoryinpractise.coffeescript;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Maven {@link Log} that holds on to its messages until they are flushed to another log.
+ * <p/>
+ * Used to keep the build log in JoinSet order when JoinSets are compiled on several threads.
+ */
+class BufferedLog implements Log {
+
+    private enum Level {DEBUG, INFO, WARN, ERROR}
+
+    private final Log delegate;
+    private final List<Message> messages = new ArrayList<Message>();
+
+    BufferedLog(Log delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replay the buffered messages on the wrapped log, through the same method each was logged with.
+     */
+    synchronized void flush() {
+        for (Message message : messages) {
+            switch (message.level) {
+                case DEBUG:
+                    if (message.error == null) {
+                        delegate.debug(message.content);
+                    } else if (message.content == null) {
+                        delegate.debug(message.error);
+                    } else {
+                        delegate.debug(message.content, message.error);
+                    }
+                    break;
+                case INFO:
+                    if (message.error == null) {
+                        delegate.info(message.content);
+                    } else if (message.content == null) {
+                        delegate.info(message.error);
+                    } else {
+                        delegate.info(message.content, message.error);
+                    }
+                    break;
+                case WARN:
+                    if (message.error == null) {
+                        delegate.warn(message.content);
+                    } else if (message.content == null) {
+                        delegate.warn(message.error);
+                    } else {
+                        delegate.warn(message.content, message.error);
+                    }
+                    break;
+                default:
+                    if (message.error == null) {
+                        delegate.error(message.content);
+                    } else if (message.content == null) {
+                        delegate.error(message.error);
+                    } else {
+                        delegate.error(message.content, message.error);
+                    }
+            }
+        }
+        messages.clear();
+    }
+
+    private synchronized void add(Level level, CharSequence content, Throwable error) {
+        messages.add(new Message(level, content, error));
+    }
+
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    public void debug(CharSequence content) {
+        add(Level.DEBUG, content, null);
+    }
+
+    public void debug(CharSequence content, Throwable error) {
+        add(Level.DEBUG, content, error);
+    }
+
+    public void debug(Throwable error) {
+        add(Level.DEBUG, null, error);
+    }
+
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled();
+    }
+
+    public void info(CharSequence content) {
+        add(Level.INFO, content, null);
+    }
+
+    public void info(CharSequence content, Throwable error) {
+        add(Level.INFO, content, error);
+    }
+
+    public void info(Throwable error) {
+        add(Level.INFO, null, error);
+    }
+
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled();
+    }
+
+    public void warn(CharSequence content) {
+        add(Level.WARN, content, null);
+    }
+
+    public void warn(CharSequence content, Throwable error) {
+        add(Level.WARN, content, error);
+    }
+
+    public void warn(Throwable error) {
+        add(Level.WARN, null, error);
+    }
+
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled();
+    }
+
+    public void error(CharSequence content) {
+        add(Level.ERROR, content, null);
+    }
+
+    public void error(CharSequence content, Throwable error) {
+        add(Level.ERROR, content, error);
+    }
+
+    public void error(Throwable error) {
+        add(Level.ERROR, null, error);
+    }
+
+    private static class Message {
+        private final Level level;
+        private final CharSequence content;
+        private final Throwable error;
+
+        private Message(Level level, CharSequence content, Throwable error) {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Records the inputs and outputs of each JoinSet from the previous build so unchanged JoinSets can be skipped.
+ * <p/>
+ * Inputs are tracked by size and last modified time, outputs by last modified time, and the whole manifest is
+ * discarded when the plugin configuration it was recorded with changes.
+ * <p/>
+ * A file edited again within the same tick of the file system's clock keeps its last modified time, and its size when
+ * the edit is the same length.  So inputs modified within {@link #MODIFIED_TIME_RESOLUTION} of being recorded also
+ * have their contents hashed, and the hash is checked as well.  Inputs are recorded before they are read, so an edit
+ * made while a JoinSet compiles is seen by the next build.
+ */
+public class BuildManifest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The coarsest last modified time resolution of common file systems, FAT's two seconds.
+     */
+    static final long MODIFIED_TIME_RESOLUTION = 2000;
+
+    private final File file;
+    private final State state;
+
+    private BuildManifest(File file, State state) {
+        this.file = file;
+        this.state = state;
+    }
+
+    /**
+     * Load the manifest from disk, starting afresh if it is missing, unreadable or was recorded with a different configuration.
+     */
+    public static BuildManifest load(File file, String configuration) {
+        if (file.isFile()) {
+            try {
+                State state = MAPPER.readValue(file, State.class);
+                if (configuration.equals(state.configuration)) {
+                    return new BuildManifest(file, state);
+                }
+            } catch (IOException e) {
+                // Treat an unreadable manifest as a full rebuild
+            }
+        }
+
+        State state = new State();
+        state.configuration = configuration;
+        return new BuildManifest(file, state);
+    }
+
+    public synchronized boolean isUpToDate(String key, List<File> inputs, Collection<File> outputs) throws IOException {
+        Entry entry = state.entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (!entry.inputs.equals(describeInputs(inputs)) || !entry.outputs.equals(describeOutputs(outputs))) {
+            return false;
+        }
+        for (Map.Entry<String, String> hash : entry.hashes.entrySet()) {
+            if (!hash.getValue().equals(hash(new File(hash.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Snapshot the inputs of a JoinSet as they are before it is compiled, to be passed to {@link #update(String, Inputs, Collection)}.
+     */
+    public Inputs snapshot(List<File> inputs) throws IOException {
+        Inputs snapshot = new Inputs();
+        snapshot.descriptions = describeInputs(inputs);
+        long now = System.currentTimeMillis();
+        for (File input : inputs) {
+            if (input.lastModified() > now - MODIFIED_TIME_RESOLUTION) {
+                snapshot.hashes.put(input.getAbsolutePath(), hash(input));
+            }
+        }
+        return snapshot;
+    }
+
+    public synchronized void update(String key, Inputs inputs, Collection<File> outputs) {
+        Entry entry = new Entry();
+        entry.inputs = inputs.descriptions;
+        entry.hashes = inputs.hashes;
+        entry.outputs = describeOutputs(outputs);
+        state.entries.put(key, entry);
+    }
+
+    public synchronized void save() throws IOException {
+        file.getParentFile().mkdirs();
+        MAPPER.writeValue(file, state);
+    }
+
+    /**
+     * Inputs are described as a list as the order of the files in a JoinSet changes the compiled output.
+     */
+    private static List<String> describeInputs(List<File> inputs) {
+        List<String> description = new ArrayList<String>(inputs.size());
+        for (File input : inputs) {
+            description.add(input.getAbsolutePath() + "|" + input.length() + "|" + input.lastModified());
+        }
+        return description;
+    }
+
+    private static String hash(File file) throws IOException {
+        return file.isFile() ? Files.asByteSource(file).hash(Hashing.sha256()).toString() : "";
+    }
+
+    private static Map<String, Long> describeOutputs(Collection<File> outputs) {
+        Map<String, Long> description = new TreeMap<String, Long>();
+        for (File output : outputs) {
+            description.put(output.getAbsolutePath(), output.isFile() ? output.lastModified() : -1L);
+        }
+        return description;
+    }
+
+    public static class State {
+        public String configuration;
+        public Map<String, Entry> entries = new TreeMap<String, Entry>();
+    }
+
+    public static class Entry {
+        public List<String> inputs;
+        public Map<String, String> hashes = new TreeMap<String, String>();
+        public Map<String, Long> outputs;
+    }
+
+    /**
+     * The inputs of a JoinSet as they were when recorded, along with the hashes of those modified too recently to be
+     * told apart by their last modified time.
+     */
+    public static class Inputs {
+        private List<String> descriptions;
+        private final Map<String, String> hashes = new TreeMap<String, String>();
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Stopwatch;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Collects how long each JoinSet, file and minified bundle took to read, compile, write and minify, along with
+ * the bytes read and written and the peak heap used, and saves it as JSON so the slowest parts of a build can be found.
+ * <p/>
+ * Units are only compared against the previous report when present in both, as incremental builds skip
+ * anything that is up to date.
+ */
+public class BuildReport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * A unit is flagged as slower when it takes this much longer than in the previous report...
+     */
+    private static final double SLOWER_FACTOR = 1.25;
+
+    /**
+     * ...and at least this many milliseconds more, so tiny units don't flag on noise.
+     */
+    private static final double SLOWER_MILLIS = 10;
+
+    private final List<Unit> units = new ArrayList<Unit>();
+
+    /**
+     * Start recording a new unit of work, a unit must only be updated by the thread that created it.
+     */
+    public synchronized Unit unit(String type, String name) {
+        Unit unit = new Unit();
+        unit.type = type;
+        unit.name = name;
+        units.add(unit);
+        return unit;
+    }
+
+    public synchronized List<Unit> getUnits() {
+        return new ArrayList<Unit>(units);
+    }
+
+    /**
+     * Load a previous report, returning null if it is missing or unreadable.
+     */
+    public static BuildReport load(File file) {
+        if (file.isFile()) {
+            try {
+                BuildReport report = new BuildReport();
+                report.units.addAll(MAPPER.readValue(file, State.class).units);
+                return report;
+            } catch (IOException e) {
+                // No comparison is made against an unreadable report
+            }
+        }
+        return null;
+    }
+
+    public synchronized void save(File file) throws IOException {
+        State state = new State();
+        state.units = getUnits();
+        state.units.sort(Comparator.comparing((Unit unit) -> unit.type).thenComparing(unit -> unit.name));
+        file.getParentFile().mkdirs();
+        MAPPER.writeValue(file, state);
+    }
+
+    /**
+     * Save the report, log the slowest units and, when asked, warn about units that got slower since the report
+     * previously saved to the same file.  Builds where nothing was done leave the previous report in place.
+     */
+    public void publish(File file, Log log, int slowest, boolean compare) {
+        if (getUnits().isEmpty()) {
+            return;
+        }
+
+        BuildReport previous = compare ? load(file) : null;
+        try {
+            save(file);
+        } catch (IOException e) {
+            log.warn("Unable to save the build report: " + e.getMessage());
+        }
+
+        logSlowest(log, slowest);
+        if (previous != null) {
+            logSlower(log, previous);
+        }
+    }
+
+    public void logSlowest(Log log, int count) {
+        List<Unit> slowest = getUnits();
+        slowest.sort(Comparator.comparingDouble(Unit::getTotalMillis).reversed());
+        if (count <= 0 || slowest.isEmpty()) {
+            return;
+        }
+
+        log.info(String.format("Slowest %d of %d units:", Math.min(count, slowest.size()), slowest.size()));
+        for (Unit unit : slowest.subList(0, Math.min(count, slowest.size()))) {
+            log.info(String.format("  %8.1f ms  %s %s (read %.1f, compile %.1f, source map %.1f, write %.1f, minify %.1f ms; %d bytes in, %d bytes out%s)",
+                                   unit.getTotalMillis(), unit.type, unit.name,
+                                   unit.readMillis, unit.compileMillis, unit.sourceMapMillis, unit.writeMillis, unit.minifyMillis,
+                                   unit.inputBytes, unit.outputBytes,
+                                   unit.peakHeapBytes > 0 ? String.format("; peak heap %d MB", unit.peakHeapBytes / (1024 * 1024)) : ""));
+        }
+    }
+
+    /**
+     * Warn about every unit that got noticeably slower since the previous report.
+     */
+    public void logSlower(Log log, BuildReport previous) {
+        Map<String, Unit> previousUnits = new HashMap<String, Unit>();
+        for (Unit unit : previous.getUnits()) {
+            previousUnits.put(unit.type + ":" + unit.name, unit);
+        }
+
+        for (Unit unit : getUnits()) {
+            Unit before = previousUnits.get(unit.type + ":" + unit.name);
+            if (before != null
+                    && unit.getTotalMillis() > before.getTotalMillis() * SLOWER_FACTOR
+                    && unit.getTotalMillis() - before.getTotalMillis() > SLOWER_MILLIS) {
+                log.warn(String.format("%s %s got slower: %.1f ms, was %.1f ms", unit.type, unit.name, unit.getTotalMillis(), before.getTotalMillis()));
+            }
+        }
+    }
+
+    /**
+     * Milliseconds elapsed on the stopwatch, with microsecond precision.
+     */
+    public static double millis(Stopwatch stopwatch) {
+        return stopwatch.elapsed(TimeUnit.MICROSECONDS) / 1000.0;
+    }
+
+    /**
+     * Reset the peak usage of the heap memory pools, so {@link #peakHeapBytes()} measures from now on.
+     */
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * The peak heap used since the last {@link #resetPeakHeap()}.  This is the sum of each heap pool's own peak,
+     * and the pools can peak at different times, so it is an upper bound on what was really in use at once.
+     */
+    public static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static class State {
+        public List<Unit> units = new ArrayList<Unit>();
+    }
+
+    public static class Unit {
+        public String type;
+        public String name;
+        public double readMillis;
+        public double compileMillis;
+        public double sourceMapMillis;
+        public double writeMillis;
+        public double minifyMillis;
+        public long inputBytes;
+        public long outputBytes;
+        public long peakHeapBytes;
+
+        public double getTotalMillis() {
+            return readMillis + compileMillis + sourceMapMillis + writeMillis + minifyMillis;
+        }
+
+        public void setTotalMillis(double totalMillis) {
+            // Derived from the other timings, only present in the JSON for readability
+        }
+    }
+
+}
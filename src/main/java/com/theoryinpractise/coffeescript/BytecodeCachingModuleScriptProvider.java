@@ -0,0 +1,165 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CharStreams;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.DefiningClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * A CommonJS module script provider that keeps the JVM classes Rhino generates for each module on disk.
+ * <p/>
+ * Compiling coffee-script's lexer, parser and nodes modules to bytecode is most of the cost of creating a
+ * {@link CoffeeScriptCompiler}.  The generated classes are stored under a hash of the module source, the
+ * Rhino version and the optimization level, and later runs define the stored classes instead of compiling
+ * the module again.  Like Rhino's StrongCachingModuleScriptProvider, loaded modules are also kept in memory.
+ */
+public class BytecodeCachingModuleScriptProvider implements ModuleScriptProvider {
+
+    private static final int FORMAT = 1;
+
+    private final ModuleSourceProvider moduleSourceProvider;
+    private final File directory;
+    private final Map<String, ModuleScript> modules = new ConcurrentHashMap<String, ModuleScript>();
+
+    public BytecodeCachingModuleScriptProvider(ModuleSourceProvider moduleSourceProvider, File directory) {
+        this.moduleSourceProvider = moduleSourceProvider;
+        this.directory = directory;
+    }
+
+    public ModuleScript getModuleScript(Context cx, String moduleId, URI uri, URI base, Scriptable paths) throws Exception {
+        ModuleScript moduleScript = modules.get(moduleId);
+        if (moduleScript != null) {
+            return moduleScript;
+        }
+
+        ModuleSource moduleSource = uri == null
+                ? moduleSourceProvider.loadSource(moduleId, paths, null)
+                : moduleSourceProvider.loadSource(uri, base, null);
+        if (moduleSource == null) {
+            return null;
+        }
+
+        String source;
+        try (Reader reader = moduleSource.getReader()) {
+            source = CharStreams.toString(reader);
+        }
+
+        String sourceName = moduleSource.getUri().toString();
+        String key = Hashing.sha256().newHasher()
+                .putInt(FORMAT)
+                .putString(cx.getImplementationVersion(), Charsets.UTF_8).putByte((byte) 0)
+                .putInt(cx.getOptimizationLevel())
+                .putString(moduleId, Charsets.UTF_8).putByte((byte) 0)
+                .putString(source, Charsets.UTF_8)
+                .hash().toString();
+
+        moduleScript = new ModuleScript(loadScript(cx, key, source, sourceName), moduleSource.getUri(), moduleSource.getBase());
+        modules.put(moduleId, moduleScript);
+        return moduleScript;
+    }
+
+    private Script loadScript(Context cx, String key, String source, String sourceName) throws Exception {
+        File classesFile = new File(directory, key + ".classes");
+
+        if (classesFile.isFile()) {
+            try {
+                return defineScript(cx, readClasses(classesFile));
+            } catch (IOException | ReflectiveOperationException | LinkageError e) {
+                // Fall through and regenerate a corrupt or incompatible entry
+            }
+        }
+
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        ClassCompiler compiler = new ClassCompiler(compilerEnv);
+        Object[] classes = compiler.compileToClassFiles(source, sourceName, 1, "coffeescript.module_" + key.substring(0, 16));
+
+        try {
+            writeClasses(classesFile, classes);
+        } catch (IOException e) {
+            // The module will be compiled again next time
+        }
+
+        return defineScript(cx, classes);
+    }
+
+    /**
+     * Define the generated classes, the first of which is the module script itself.
+     */
+    private Script defineScript(Context cx, Object[] classes) throws ReflectiveOperationException {
+        DefiningClassLoader loader = new DefiningClassLoader(cx.getApplicationClassLoader());
+        Class<?> scriptClass = null;
+        for (int i = 0; i < classes.length; i += 2) {
+            Class<?> definedClass = loader.defineClass((String) classes[i], (byte[]) classes[i + 1]);
+            loader.linkClass(definedClass);
+            if (scriptClass == null) {
+                scriptClass = definedClass;
+            }
+        }
+        return (Script) scriptClass.getDeclaredConstructor().newInstance();
+    }
+
+    private static Object[] readClasses(File classesFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(classesFile)))) {
+            Object[] classes = new Object[in.readInt() * 2];
+            for (int i = 0; i < classes.length; i += 2) {
+                classes[i] = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes[i + 1] = bytes;
+            }
+            return classes;
+        }
+    }
+
+    private static void writeClasses(File classesFile, Object[] classes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(classes.length / 2);
+            for (int i = 0; i < classes.length; i += 2) {
+                byte[] classBytes = (byte[]) classes[i + 1];
+                out.writeUTF((String) classes[i]);
+                out.writeInt(classBytes.length);
+                out.write(classBytes);
+            }
+        }
+        FileUtilities.writeAtomically(classesFile, bytes.toByteArray());
+    }
+
+}
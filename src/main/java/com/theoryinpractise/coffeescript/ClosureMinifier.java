@@ -1,7 +1,13 @@
 package com.theoryinpractise.coffeescript;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.google.javascript.jscomp.*;
 import com.google.javascript.jscomp.Compiler;
@@ -10,6 +16,9 @@ import org.apache.maven.plugin.logging.Log;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Copyright 2011 Mark Derricutt.
@@ -46,15 +55,37 @@ public class ClosureMinifier {
 		this.logger = logger;
 	}
 
+	/**
+	 * The default externs are unzipped from the Closure jar once per JVM and shared by every minifier.
+	 */
+	private static final Supplier<List<SourceFile>> DEFAULT_EXTERNS = Suppliers.memoize(() -> {
+		try {
+			return ImmutableList.copyOf(CommandLineRunner.getDefaultExterns());
+		} catch (IOException e) {
+			throw new ClosureException("Unable to load default External variables Files. The files include definitions for global javascript/browser objects such as window, document.", e);
+		}
+	});
+
+	/**
+	 * Project externs files, keyed by their path, size and last modified time so changed files are read again.
+	 */
+	private static final ConcurrentMap<String, SourceFile> PROJECT_EXTERNS = new ConcurrentHashMap<String, SourceFile>();
+
 	private Log logger;
 	private String compilationLevel = CompilationLevel.SIMPLE_OPTIMIZATIONS.toString();
+	private List<File> externs = Lists.newArrayList();
+	private GzipCompressor compressor;
 
 	public void compile(List<File> filesToCompile, String destFileName){
-		File destFile = prepareDestFile(destFileName);
+		File destFile = new File(destFileName);
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		List<SourceFile> externsFiles = loadExterns();
+		logger.info(String.format("Loaded %d externs in %d ms", externsFiles.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS)));
 
 		logger.info("Creating compiler and compiling...");
 		Compiler compiler = new Compiler();
-		Result results = compiler.compile(getExterns(), getInputs(filesToCompile), getCompilerOptions());
+		Result results = compiler.compile(externsFiles, getInputs(filesToCompile), getCompilerOptions());
 		logger.info("Compiled...");
 
 		for(JSError error : results.errors){
@@ -66,25 +97,42 @@ public class ClosureMinifier {
 
 		if (results.success) {
 			try {
-				Files.write(compiler.toSource(), destFile, Charsets.UTF_8);
+				boolean changed = FileUtilities.writeIfChanged(destFile, compiler.toSource().getBytes(Charsets.UTF_8));
+				if (compressor != null) {
+					compressor.compress(destFile, changed);
+				}
 			} catch (IOException e) {
 				throw new ClosureException("Failed to write minified file to " + destFile, e);
 			}
 		}else{
+			// Don't leave a minified file behind that no longer matches its sources
+			destFile.delete();
 			throw new ClosureException("Closure Compiler Failed - See error messages on System.err");
 		}
 	}
 
 	/**
-	 * Prepare the Destination File, Remove if it already exists
-	 * @param destFileName
+	 * A fingerprint of everything that changes the minified output: the contents and order of the inputs, the
+	 * compilation level, and the externs, being the defaults bundled with this version of Closure and any project externs.
 	 */
-	private File prepareDestFile(String destFileName){
-		File destFile = new File(destFileName);
-		if(destFile.exists()){
-			destFile.delete();
+	public String fingerprint(List<File> filesToCompile) throws IOException {
+		Hasher hasher = Hashing.sha256().newHasher()
+				.putString(Compiler.getReleaseVersion(), Charsets.UTF_8).putByte((byte) 0)
+				.putString(compilationLevel, Charsets.UTF_8).putByte((byte) 0)
+				.putString("default-externs", Charsets.UTF_8).putByte((byte) 0);
+
+		for (File file : externs) {
+			hasher.putString(file.getAbsolutePath(), Charsets.UTF_8).putByte((byte) 0)
+			      .putBytes(Files.asByteSource(file).hash(Hashing.sha256()).asBytes());
 		}
-		return destFile;
+		hasher.putByte((byte) 0);
+
+		for (File file : filesToCompile) {
+			hasher.putString(file.getAbsolutePath(), Charsets.UTF_8).putByte((byte) 0)
+			      .putBytes(Files.asByteSource(file).hash(Hashing.sha256()).asBytes());
+		}
+
+		return hasher.hash().toString();
 	}
 
 	/**
@@ -110,15 +158,28 @@ public class ClosureMinifier {
 	 * definitions for global javascript/browser objects such as window, document.
 	 *
 	 * This method sneaks into the CommandLineRunner class of the Closure command line tool
-	 * and pulls the default Externs there.  This class could be modified to instead look
-	 * somewhere more relevant to the project.
+	 * and pulls the default Externs there, followed by any externs files from the project.
+	 *
+	 * Only the source files are cached, each Closure Compiler parses its externs itself.
 	 */
-	private List<SourceFile> getExterns(){
-		try {
-			return CommandLineRunner.getDefaultExterns();
-		} catch (IOException e) {
-			throw new ClosureException("Unable to load default External variables Files. The files include definitions for global javascript/browser objects such as window, document.", e);
+	private List<SourceFile> loadExterns(){
+		List<SourceFile> files = Lists.newArrayList(DEFAULT_EXTERNS.get());
+
+		for(File file : externs){
+			String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+			SourceFile sourceFile = PROJECT_EXTERNS.get(key);
+			if (sourceFile == null) {
+				try {
+					sourceFile = SourceFile.fromCode(file.getPath(), Files.asCharSource(file, Charsets.UTF_8).read());
+				} catch (IOException e) {
+					throw new ClosureException("Unable to read externs file " + file, e);
+				}
+				PROJECT_EXTERNS.put(key, sourceFile);
+			}
+			files.add(sourceFile);
 		}
+
+		return files;
 	}
 
 	private List<SourceFile> getInputs(List<File> filesToProcess)   {
@@ -138,4 +199,26 @@ public class ClosureMinifier {
 	public void setCompilationLevel(String compilationLevel) {
 		this.compilationLevel = compilationLevel;
 	}
+
+	public GzipCompressor getCompressor() {
+		return compressor;
+	}
+
+	/**
+	 * Writes a compressed copy of the minified file whenever it changes, or null to not compress it.
+	 */
+	public void setCompressor(GzipCompressor compressor) {
+		this.compressor = compressor;
+	}
+
+	public List<File> getExterns() {
+		return externs;
+	}
+
+	/**
+	 * Externs files from the project, used in addition to Closure's default externs.
+	 */
+	public void setExterns(List<File> externs) {
+		this.externs = externs;
+	}
 }
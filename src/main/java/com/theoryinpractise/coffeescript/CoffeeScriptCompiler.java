@@ -1,17 +1,6 @@
 package com.theoryinpractise.coffeescript;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.mozilla.javascript.Context;
-import org.mozilla.javascript.JavaScriptException;
-import org.mozilla.javascript.NativeObject;
-import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.commonjs.module.Require;
-import org.mozilla.javascript.commonjs.module.provider.StrongCachingModuleScriptProvider;
-import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
-
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Collections;
+import java.io.File;
 
 /**
  * Copyright 2011 Mark Derricutt.
@@ -33,86 +22,53 @@ import java.util.Collections;
  * <p/>
  * <p/>
  * Wrapper around the coffee-script compiler from https://github.com/jashkenas/coffee-script/
+ * <p/>
+ * The compiler runs in one of several JavaScript engines, all of which produce the same output for every bundled
+ * version of coffee-script.
  */
 public class CoffeeScriptCompiler {
 
-    private final Scriptable globalScope;
-    private String version;
-    private Scriptable coffeeScript;
+    private final CoffeeScriptEngine engine;
 
     public CoffeeScriptCompiler(String version) {
-        this.version = version;
-
-        try {
-            Context context = createContext();
-            globalScope = context.initStandardObjects();
-            final Require require = getSandboxedRequire(context, globalScope, true);
-            coffeeScript = require.requireMain(context, "coffee-script");
-        } catch (Exception e1) {
-            throw new CoffeeScriptException("Unable to load the coffeeScript compiler into Rhino", e1);
-        } finally {
-            Context.exit();
-        }
-
+        this(version, null);
     }
 
-    public CompileResult compile(String coffeeScriptSource, String sourceName, boolean bare, SourceMap map, boolean header, boolean literate) {
-        Context context = Context.enter();
-        try {
-            Scriptable compileScope = context.newObject(coffeeScript);
-            compileScope.setParentScope(coffeeScript);
-            compileScope.put("coffeeScript", compileScope, coffeeScriptSource);
-            try {
-                boolean useMap = map != SourceMap.NONE;
-                String options = String.format("{bare: %s, sourceMap: %s, literate: %s, header: %s, filename: '%s'}", bare, useMap, literate, header, sourceName);
-                Object result = context.evaluateString(
-                        compileScope,
-                        String.format("compile(coffeeScript, %s);", options),
-                        sourceName, 0, null);
-
-                if (map == SourceMap.NONE) {
-                    return new CompileResult((String) result, null);
-                } else {
-
-                    NativeObject nativeObject = (NativeObject) result;
-                    String js = nativeObject.get("js").toString();
-                    String sourceMap;
-                    try {
-                        ObjectMapper objectMapper = new ObjectMapper();
-                        sourceMap = objectMapper.writeValueAsString(nativeObject.get("v3SourceMap"));
-                    } catch (Exception e) {
-                        sourceMap = null;
-                    }
+    /**
+     * @param bytecodeCacheDirectory where to keep the classes Rhino generates for the coffee-script modules
+     *                               between builds, or null to compile the modules every time
+     */
+    public CoffeeScriptCompiler(String version, File bytecodeCacheDirectory) {
+        this(version, Engine.RHINO, bytecodeCacheDirectory);
+    }
 
-                    return new CompileResult(js, sourceMap);
+    /**
+     * @param bytecodeCacheDirectory only used by Rhino, see {@link #CoffeeScriptCompiler(String, File)}
+     */
+    public CoffeeScriptCompiler(String version, Engine engine, File bytecodeCacheDirectory) {
+        switch (engine) {
+            case GRAALJS:
+                try {
+                    this.engine = new GraalJsCoffeeScriptEngine(version);
+                } catch (NoClassDefFoundError e) {
+                    throw new CoffeeScriptException("The GraalJS engine requires org.graalvm.js:js to be added to the plugin's dependencies", e);
                 }
-
-            } catch (JavaScriptException e) {
-                throw new CoffeeScriptException(e.getMessage(), e);
-            }
-        } finally {
-            Context.exit();
+                break;
+            default:
+                this.engine = new RhinoCoffeeScriptEngine(version, bytecodeCacheDirectory);
         }
     }
 
-    private Context createContext() {
-        Context context = Context.enter();
-        context.setOptimizationLevel(9); // Enable optimization
-        return context;
-    }
-
-    private Require getSandboxedRequire(Context cx, Scriptable scope, boolean sandboxed) throws URISyntaxException {
-        return new Require(cx, cx.initStandardObjects(),
-                           new StrongCachingModuleScriptProvider(
-                                   new UrlModuleSourceProvider(Collections.singleton(
-                                           getDirectory()), null)), null, null, sandboxed);
+    public CompileResult compile(String coffeeScriptSource, String sourceName, boolean bare, SourceMap map, boolean header, boolean literate) {
+        return compile(coffeeScriptSource, new CompileOptions(sourceName, bare, map, header, literate));
     }
 
-    private URI getDirectory() throws URISyntaxException {
-        final String resourcePath = String.format("/coffee-script-%s/", version);
-        return getClass().getResource(resourcePath).toURI();
+    public CompileResult compile(String coffeeScriptSource, CompileOptions options) {
+        return engine.compile(coffeeScriptSource, options);
     }
 
     public static enum SourceMap {NONE, V3}
 
+    public static enum Engine {RHINO, GRAALJS}
+
 }
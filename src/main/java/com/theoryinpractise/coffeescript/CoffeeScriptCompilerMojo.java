@@ -1,13 +1,19 @@
 package com.theoryinpractise.coffeescript;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -15,7 +21,29 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.stream.Collectors.toList;
 
@@ -98,6 +126,15 @@ public class CoffeeScriptCompilerMojo extends AbstractMojo {
     @Parameter(defaultValue = "1.10.0")
     private String version;
 
+    /**
+     * Which JavaScript engine should run the coffee-script compiler, "rhino" or "graaljs".  Rhino is the faster
+     * engine on a standard JDK, where GraalJS can only interpret the compiler and is slower.  GraalJS is only faster
+     * when the build runs on a GraalVM JDK, and requires org.graalvm.js:js to be added to the plugin's dependencies.
+     *
+     */
+    @Parameter(property = "engine", defaultValue = "rhino")
+    private String engine;
+
     /**
      * Should the files be compiled individually or as a whole.
      * <p/>
@@ -123,17 +160,155 @@ public class CoffeeScriptCompilerMojo extends AbstractMojo {
     @Parameter(defaultValue = "false")
     private Boolean preserveSubDirectory;
 
+    /**
+     * Should compiled output be cached on disk and reused when the same source is compiled again
+     * with the same version and options?
+     *
+     */
+    @Parameter(property = "compileCache", defaultValue = "false")
+    private Boolean compileCache;
+
+    /**
+     * Location of the compile cache.  The directory may be shared between projects and concurrent builds.
+     *
+     */
+    @Parameter(property = "compileCacheDirectory", defaultValue = "${user.home}/.coffee-maven-plugin/cache")
+    private File compileCacheDirectory;
+
+    /**
+     * Maximum size of the compile cache in megabytes, the least recently used entries are removed once it is exceeded.
+     *
+     */
+    @Parameter(property = "compileCacheMaxSize", defaultValue = "256")
+    private Integer compileCacheMaxSize;
+
+    /**
+     * Should the JVM classes Rhino generates when loading the coffee-script compiler be kept on disk, so later
+     * builds can skip compiling coffee-script itself?
+     *
+     */
+    @Parameter(property = "bytecodeCache", defaultValue = "true")
+    private Boolean bytecodeCache;
+
+    /**
+     * Location of the cached coffee-script compiler classes.
+     *
+     */
+    @Parameter(property = "bytecodeCacheDirectory", defaultValue = "${user.home}/.coffee-maven-plugin/rhino")
+    private File bytecodeCacheDirectory;
+
+    /**
+     * Should JoinSets whose inputs, outputs and configuration are unchanged since the previous build be skipped?
+     *
+     */
+    @Parameter(property = "incremental", defaultValue = "true")
+    private Boolean incremental;
+
+    /**
+     * Location used to keep track of the state of previous builds.
+     *
+     */
+    @Parameter(defaultValue = "${project.build.directory}/coffee-maven-plugin")
+    private File buildStateDirectory;
+
+    /**
+     * Number of threads used to compile JoinSets, either a plain thread count or a multiple of the
+     * available cores such as "1C".
+     *
+     */
+    @Parameter(property = "threads", defaultValue = "1")
+    private String threads;
+
+    /**
+     * Should the time spent reading, compiling and writing each JoinSet and file be saved as a JSON report in the
+     * build state directory?
+     *
+     */
+    @Parameter(property = "buildReport", defaultValue = "true")
+    private Boolean buildReport;
+
+    /**
+     * Number of the slowest JoinSets and files from the build report to log.
+     *
+     */
+    @Parameter(property = "buildReportSlowest", defaultValue = "5")
+    private Integer buildReportSlowest;
+
+    /**
+     * Should JoinSets and files that got slower since the previous build report be logged?
+     *
+     */
+    @Parameter(property = "buildReportCompare", defaultValue = "false")
+    private Boolean buildReportCompare;
+
+    /**
+     * Should the compile daemon started with the daemon-start goal do the compiling?  Without a running daemon the
+     * files are compiled in-process.
+     *
+     */
+    @Parameter(property = "daemon", defaultValue = "false")
+    private Boolean daemon;
+
+    /**
+     * Location of the state of the compile daemon.
+     *
+     */
+    @Parameter(property = "daemonDirectory", defaultValue = "${user.home}/.coffee-maven-plugin/daemon")
+    private File daemonDirectory;
+
+    /**
+     * Should memory use be kept down for very large JoinSets?  JoinSets are compiled one at a time, their sources
+     * are released once compiled, outputs are streamed to disk, and individually compiled files are only compiled
+     * as far ahead as there are threads to compile them.
+     *
+     */
+    @Parameter(property = "memoryBounded", defaultValue = "false")
+    private Boolean memoryBounded;
+
+    /**
+     * Should the files of each JoinSet be ordered by their "#= require name" directives, so every file comes after
+     * the files it requires?  Requires of files outside the JoinSet, such as vendor libraries, are logged and
+     * otherwise ignored.
+     *
+     */
+    @Parameter(property = "requireDirectives", defaultValue = "true")
+    private Boolean requireDirectives;
+
+    /**
+     * Should a .js.gz (and .js.map.gz) copy be written at maximum compression next to each output, for servers that
+     * send precompressed files?  Outputs are compressed in parallel, and only when they changed.
+     *
+     */
+    @Parameter(property = "gzip", defaultValue = "false")
+    private Boolean gzip;
+
     @Override
     public void execute() throws MojoExecutionException {
+        validateConfiguration();
 
-        if (compileIndividualFiles && map) {
-            throw new MojoExecutionException("Unable to generate source maps when compiling joinsets individually");
-        }
+        getLog().info(describeCompiler());
+        compileJoinSets(findJoinSets());
+    }
+
+    String describeCompiler() {
+        return String.format("coffee-maven-plugin using coffee script version %s on %s", version, getEngine());
+    }
 
+    void validateConfiguration() throws MojoExecutionException {
         if (map && !sourceMapVersions.contains(version)) {
             throw new MojoExecutionException("CoffeeScript 1.6.1 or newer is required for using source maps");
         }
 
+        if (parseEngine(engine) == CoffeeScriptCompiler.Engine.GRAALJS) {
+            try {
+                if (GraalJsCoffeeScriptEngine.isInterpreted()) {
+                    getLog().warn("GraalJS can only interpret the coffee-script compiler on this JDK, which is slower than Rhino");
+                }
+            } catch (NoClassDefFoundError e) {
+                throw new MojoExecutionException("The GraalJS engine requires org.graalvm.js:js to be added to the plugin's dependencies");
+            }
+        }
+
         if (!acceptableVersions.contains(version)) {
 
             String error = String.format("Unsupported version of coffee-script specified (%s) - supported versions: %s",
@@ -142,39 +317,425 @@ public class CoffeeScriptCompilerMojo extends AbstractMojo {
 
             throw new MojoExecutionException(error);
         }
+    }
+
+    /**
+     * Compile each of the given JoinSets that is not up to date.
+     */
+    void compileJoinSets(List<JoinSet> joinSets) throws MojoExecutionException {
+        CoffeeScriptCompilerPool compilers = CoffeeScriptCompilerPool.forVersion(version, getEngine(), bytecodeCache ? bytecodeCacheDirectory : null);
+        CompileCache cache = compileCache ? new CompileCache(compileCacheDirectory, compileCacheMaxSize * 1024L * 1024L) : null;
+        BuildManifest manifest = incremental ? BuildManifest.load(new File(buildStateDirectory, "coffee-manifest.json"), describeConfiguration()) : null;
+        DependencyGraph dependencies = requireDirectives ? DependencyGraph.load(new File(buildStateDirectory, "coffee-requires.json")) : null;
+
+        int threadCount = parseThreadCount(threads);
+        // Bounding memory compiles one JoinSet at a time, so only one JoinSet's sources and outputs are ever held
+        ExecutorService executor = threadCount > 1 && !memoryBounded ? Executors.newFixedThreadPool(threadCount, daemonThreadFactory("coffee-compiler-%d")) : null;
+        Compilation compilation = new Compilation();
+        compilation.compilers = compilers;
+        compilation.cache = cache;
+        compilation.fragments = incremental ? new CompileCache(new File(buildStateDirectory, "fragments"), compileCacheMaxSize * 1024L * 1024L) : null;
+        compilation.sources = new SourceLoader(Runtime.getRuntime().availableProcessors());
+        compilation.report = new BuildReport();
+        compilation.fileThreads = threadCount;
+        compilation.measureHeap = executor == null;
+        compilation.compressor = gzip ? new GzipCompressor(Runtime.getRuntime().availableProcessors()) : null;
+
+        CompileDaemonClient daemonClient = daemon ? CompileDaemonClient.connect(daemonDirectory) : null;
+        if (daemonClient != null) {
+            getLog().info(String.format("Compiling with the compile daemon (pid %s)", daemonClient.getPid()));
+        } else if (daemon) {
+            getLog().info("No compile daemon is running, compiling in-process");
+        }
+        compilation.daemon = daemonClient;
 
-        getLog().info(String.format("coffee-maven-plugin using coffee script version %s", version));
-        CoffeeScriptCompiler coffeeScriptCompiler = new CoffeeScriptCompiler(version);
+        // Files of individually compiled JoinSets get their own pool, as JoinSets waiting on them occupy the JoinSet pool
+        if (threadCount > 1 && joinSets.stream().anyMatch(this::isCompiledIndividually)) {
+            compilation.fileExecutor = Executors.newFixedThreadPool(threadCount, daemonThreadFactory("coffee-file-compiler-%d"));
+        }
 
         try {
-            for (JoinSet joinSet : findJoinSets()) {
-                boolean compileJoinSetIndividually = joinSet.getCompileIndividualFiles() != null ? joinSet.getCompileIndividualFiles() : compileIndividualFiles;
-
-                if (compileJoinSetIndividually) {
-                    getLog().info("Starting individual compilations of files");
-
-                    StringBuilder compiled = new StringBuilder();
-                    for (File file : joinSet.getFiles()) {
-                        getLog().info("Compiling File " + file.getName() + " in JoinSet:" + joinSet.getId());
-                        compiled
-                                .append(coffeeScriptCompiler.compile(Files.toString(file, Charsets.UTF_8), file.getName(), bare, getSourceMapType(), header, file.getName().endsWith(".litcoffee")).getJs())
-                                .append("\n");
+            int upToDate = 0;
+            List<BufferedLog> logs = Lists.newArrayList();
+            List<Future<Void>> compilations = Lists.newArrayList();
+            List<Callable<Void>> pending = Lists.newArrayList();
+
+            for (JoinSet joinSet : joinSets) {
+                // Every JoinSet is ordered before any is compiled, so a circular require fails the build straight away
+                if (dependencies != null && !(joinSet instanceof StaticJoinSet)) {
+                    joinSet.sortByRequires(dependencies, getLog());
+                }
+
+                List<File> outputs = getOutputFiles(joinSet);
+                String manifestKey = Joiner.on('|').join(outputs.get(0).getAbsolutePath(), isCompiledIndividually(joinSet), joinSet.isLiterate());
+
+                if (manifest != null && manifest.isUpToDate(manifestKey, joinSet.getFiles(), outputs)) {
+                    getLog().debug("JoinSet " + joinSet.getId() + " is up to date");
+                    upToDate++;
+                    if (compilation.compressor != null) {
+                        // Still writes compressed copies that are missing, such as when gzip was just turned on
+                        for (File output : outputs) {
+                            if (output.isFile()) {
+                                compilation.compressor.compress(output, false);
+                            }
+                        }
                     }
-                    write(joinSet.getCoffeeOutputDirectory(), joinSet.getId(), new CompileResult(compiled.toString(), null));
-                } else {
-                    getLog().info("Compiling JoinSet: " + joinSet.getId() + " with files:  " + joinSet.getFileNames());
+                    continue;
+                }
+                BuildManifest.Inputs inputs = manifest != null ? manifest.snapshot(joinSet.getFiles()) : null;
+
+                // Start reading every JoinSet's files up front so reading overlaps with compiling
+                if (!memoryBounded) {
+                    compilation.sources.preload(joinSet.getFiles());
+                }
 
-                    String sourceName = joinSet.getId() + (joinSet.isLiterate() ? ".litcoffee" : ".coffee");
-                    CompileResult compiled = coffeeScriptCompiler.compile(joinSet.getConcatenatedStringOfFiles(), sourceName, bare, getSourceMapType(), header, joinSet.isLiterate());
+                Log log = executor != null ? new BufferedLog(getLog()) : getLog();
+                pending.add(() -> {
+                    compileJoinSet(compilation, joinSet, log);
+                    joinSet.releaseSource();
+                    if (memoryBounded) {
+                        compilation.sources.release(joinSet.getFiles());
+                    }
+                    if (manifest != null) {
+                        manifest.update(manifestKey, inputs, outputs);
+                    }
+                    return null;
+                });
+                if (executor != null) {
+                    logs.add((BufferedLog) log);
+                }
+            }
 
-                    write(joinSet.getCoffeeOutputDirectory(), joinSet.getId(), compiled);
+            for (Callable<Void> joinSetCompilation : pending) {
+                if (executor != null) {
+                    compilations.add(executor.submit(joinSetCompilation));
+                } else {
+                    joinSetCompilation.call();
+                }
+            }
 
+            // Wait for the JoinSets in order so the build log reads the same as a single threaded build
+            for (int i = 0; i < compilations.size(); i++) {
+                try {
+                    compilations.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+                } finally {
+                    logs.get(i).flush();
                 }
             }
 
+            if (upToDate > 0) {
+                getLog().info(String.format("Skipped %d up to date JoinSets", upToDate));
+            }
+
+            if (compilation.compressor != null) {
+                compilation.compressor.await(getLog());
+            }
+
+            if (compilation.outputs.get() > 0) {
+                getLog().info(String.format("Wrote %d changed outputs, left %d unchanged outputs untouched",
+                                            compilation.changedOutputs.get(), compilation.outputs.get() - compilation.changedOutputs.get()));
+            }
+
+            if (cache != null) {
+                getLog().info(String.format("Compile cache: %d hits, %d misses", cache.getHits(), cache.getMisses()));
+                cache.evict();
+            }
+
+            if (compilation.fragments != null) {
+                compilation.fragments.evict();
+            }
+
+            if (buildReport) {
+                compilation.report.publish(new File(buildStateDirectory, "coffee-report.json"), getLog(), buildReportSlowest, buildReportCompare);
+            }
+
+        } catch (MojoExecutionException e) {
+            throw e;
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (compilation.fileExecutor != null) {
+                compilation.fileExecutor.shutdownNow();
+            }
+            compilation.sources.close();
+            if (compilation.compressor != null) {
+                compilation.compressor.close();
+            }
+            if (daemonClient != null) {
+                daemonClient.close();
+            }
+            if (dependencies != null) {
+                try {
+                    dependencies.save();
+                } catch (IOException e) {
+                    getLog().warn("Unable to save the require directives: " + e.getMessage());
+                }
+            }
+            if (manifest != null) {
+                try {
+                    manifest.save();
+                } catch (IOException e) {
+                    getLog().warn("Unable to save the incremental build manifest: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a threads parameter, either a plain thread count or a multiple of the available cores such as "1C" or "0.5C".
+     */
+    static int parseThreadCount(String threads) throws MojoExecutionException {
+        try {
+            if (threads.toUpperCase().endsWith("C")) {
+                float perCore = Float.parseFloat(threads.substring(0, threads.length() - 1));
+                return Math.max(1, (int) (perCore * Runtime.getRuntime().availableProcessors()));
+            }
+            return Math.max(1, Integer.parseInt(threads));
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException(String.format("Invalid threads value (%s) - expected a thread count or a multiple of the available cores such as 1C", threads));
+        }
+    }
+
+    /**
+     * Parse an engine parameter, the name of a {@link CoffeeScriptCompiler.Engine} in any case.
+     */
+    static CoffeeScriptCompiler.Engine parseEngine(String engine) throws MojoExecutionException {
+        try {
+            return CoffeeScriptCompiler.Engine.valueOf(engine.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(String.format("Unsupported JavaScript engine specified (%s) - supported engines: rhino, graaljs", engine));
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    private boolean isCompiledIndividually(JoinSet joinSet) {
+        return joinSet.getCompileIndividualFiles() != null ? joinSet.getCompileIndividualFiles() : compileIndividualFiles;
+    }
+
+    private void compileJoinSet(Compilation compilation, JoinSet joinSet, Log log) throws IOException {
+        BuildReport.Unit joinSetUnit = compilation.report.unit("joinset", joinSet.getId());
+        if (compilation.measureHeap) {
+            BuildReport.resetPeakHeap();
+        }
+
+        if (isCompiledIndividually(joinSet)) {
+            log.info("Starting individual compilations of files");
+
+            List<File> files = joinSet.getFiles();
+            List<BuildReport.Unit> fileUnits = Lists.newArrayListWithCapacity(files.size());
+            Deque<Future<CompileResult>> outputs = new ArrayDeque<Future<CompileResult>>();
+            int reused = 0;
+
+            // Bounding memory only compiles as many files ahead as there are threads, rather than every file
+            int window = !memoryBounded ? Integer.MAX_VALUE : compilation.fileExecutor != null ? compilation.fileThreads : 1;
+
+            try (StreamedOutput jsOutput = memoryBounded ? new StreamedOutput(getOutputFile(joinSet.getCoffeeOutputDirectory(), joinSet.getId() + ".js", log)) : null;
+                 StreamedOutput mapOutput = memoryBounded && map ? new StreamedOutput(getOutputFile(joinSet.getCoffeeOutputDirectory(), joinSet.getId() + ".js.map", log)) : null) {
+
+                Writer jsWriter = jsOutput != null ? jsOutput.getWriter() : new StringWriter();
+                Writer mapWriter = mapOutput != null ? mapOutput.getWriter() : map ? new StringWriter() : null;
+                JoinedOutput joined = new JoinedOutput(joinSet.getId() + ".js", jsWriter, mapWriter, joinSetUnit);
+
+                for (File file : files) {
+                    BuildReport.Unit fileUnit = compilation.report.unit("file", file.getPath());
+                    fileUnits.add(fileUnit);
+
+                    Stopwatch stopwatch = Stopwatch.createStarted();
+                    String source = compilation.sources.load(file);
+                    if (memoryBounded) {
+                        compilation.sources.release(Collections.singletonList(file));
+                    }
+                    fileUnit.readMillis = BuildReport.millis(stopwatch);
+                    fileUnit.inputBytes = file.length();
+
+                    CompileOptions options = getCompileOptions(file.getName(), file.getName().endsWith(".litcoffee"));
+
+                    // Reuse the output kept from a previous build when the file itself has not changed
+                    String fragmentKey = compilation.fragments != null ? CompileCache.key(version, source, options) : null;
+                    CompileResult fragment = fragmentKey != null ? compilation.fragments.get(fragmentKey) : null;
+                    if (fragment != null) {
+                        reused++;
+                        fileUnit.outputBytes = fragment.getJs().getBytes(Charsets.UTF_8).length;
+                        outputs.add(Futures.immediateFuture(fragment));
+                    } else {
+                        log.info("Compiling File " + file.getName() + " in JoinSet:" + joinSet.getId());
+                        Callable<CompileResult> fileCompilation = () -> {
+                            Stopwatch compileStopwatch = Stopwatch.createStarted();
+                            CompileResult result = compile(compilation, source, options);
+                            if (fragmentKey != null) {
+                                compilation.fragments.put(fragmentKey, result);
+                            }
+                            fileUnit.compileMillis = BuildReport.millis(compileStopwatch);
+                            fileUnit.outputBytes = result.getJs().getBytes(Charsets.UTF_8).length;
+                            return result;
+                        };
+
+                        FutureTask<CompileResult> task = new FutureTask<CompileResult>(fileCompilation);
+                        if (compilation.fileExecutor != null) {
+                            compilation.fileExecutor.execute(task);
+                        } else {
+                            task.run();
+                            getOutput(task);
+                        }
+                        outputs.add(task);
+                    }
+
+                    while (outputs.size() >= window) {
+                        joined.append(getOutput(outputs.poll()), fileUnits.get(joined.getFiles()));
+                    }
+                }
+
+                // Join the outputs in the original file order, however the compilations finished
+                while (!outputs.isEmpty()) {
+                    joined.append(getOutput(outputs.poll()), fileUnits.get(joined.getFiles()));
+                }
+                joined.finish();
+
+                if (reused > 0) {
+                    log.info(String.format("Reused %d unchanged files in JoinSet:%s", reused, joinSet.getId()));
+                }
+
+                if (jsOutput != null) {
+                    Stopwatch stopwatch = Stopwatch.createStarted();
+                    countOutput(compilation, jsOutput.getFile(), jsOutput.commit());
+                    joinSetUnit.writeMillis = BuildReport.millis(stopwatch);
+                    joinSetUnit.outputBytes = jsOutput.getBytes();
+                    if (mapOutput != null) {
+                        stopwatch.reset().start();
+                        countOutput(compilation, mapOutput.getFile(), mapOutput.commit());
+                        joinSetUnit.sourceMapMillis += BuildReport.millis(stopwatch);
+                        joinSetUnit.outputBytes += mapOutput.getBytes();
+                    }
+                } else {
+                    CompileResult result = mapWriter != null ? new CompileResult(jsWriter.toString(), mapWriter.toString()) : new CompileResult(jsWriter.toString());
+                    write(compilation, joinSet.getCoffeeOutputDirectory(), joinSet.getId(), result, log, joinSetUnit);
+                }
+            }
+        } else {
+            log.info("Compiling JoinSet: " + joinSet.getId() + " with files:  " + joinSet.getFileNames());
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            String source = joinSet.getConcatenatedStringOfFiles(compilation.sources);
+            if (memoryBounded) {
+                compilation.sources.release(joinSet.getFiles());
+            }
+            joinSetUnit.readMillis = BuildReport.millis(stopwatch);
+            for (File file : joinSet.getFiles()) {
+                joinSetUnit.inputBytes += file.length();
+            }
+
+            stopwatch.reset().start();
+            String sourceName = joinSet.getId() + (joinSet.isLiterate() ? ".litcoffee" : ".coffee");
+            CompileResult compiled = compile(compilation, source, getCompileOptions(sourceName, joinSet.isLiterate()));
+            joinSetUnit.compileMillis = BuildReport.millis(stopwatch);
+            joinSet.releaseSource();
+
+            if (memoryBounded) {
+                writeStreamed(compilation, joinSet.getCoffeeOutputDirectory(), joinSet.getId(), compiled, log, joinSetUnit);
+            } else {
+                write(compilation, joinSet.getCoffeeOutputDirectory(), joinSet.getId(), compiled, log, joinSetUnit);
+            }
         }
+
+        if (compilation.measureHeap) {
+            joinSetUnit.peakHeapBytes = BuildReport.peakHeapBytes();
+            if (memoryBounded) {
+                log.info(String.format("Peak heap while compiling JoinSet:%s was %d MB", joinSet.getId(), joinSetUnit.peakHeapBytes / (1024 * 1024)));
+            }
+        }
+    }
+
+    private static CompileResult getOutput(Future<CompileResult> output) throws IOException {
+        try {
+            return Uninterruptibles.getUninterruptibly(output);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Describe every setting that changes the compiled output, a change to any of them invalidates the build manifest.
+     */
+    private String describeConfiguration() {
+        return Joiner.on(';').join(version, getEngine(), bare, map, header, compileIndividualFiles, preserveSubDirectory,
+                                   requireDirectives, memoryBounded, coffeeOutputDirectory.getAbsolutePath());
+    }
+
+    /**
+     * Delete the outputs of a JoinSet whose files are gone, along with their compressed copies.
+     */
+    void deleteOutputs(JoinSet joinSet, Log log) {
+        for (File output : getOutputFiles(joinSet)) {
+            for (File file : new File[] {output, new File(output.getPath() + ".gz")}) {
+                if (file.delete()) {
+                    log.info("Deleted " + file.getPath());
+                }
+            }
+        }
+    }
+
+    private List<File> getOutputFiles(JoinSet joinSet) {
+        File outputDirectory = getOutputDirectory(joinSet.getCoffeeOutputDirectory());
+        List<File> outputs = Lists.newArrayList(new File(outputDirectory, joinSet.getId() + ".js"));
+        if (map) {
+            outputs.add(new File(outputDirectory, joinSet.getId() + ".js.map"));
+        }
+        return outputs;
+    }
+
+    private File getOutputDirectory(File joinSetOutputDirectory) {
+        return joinSetOutputDirectory != null ? joinSetOutputDirectory : coffeeOutputDirectory;
+    }
+
+    private CoffeeScriptCompiler.Engine getEngine() {
+        return CoffeeScriptCompiler.Engine.valueOf(engine.toUpperCase(Locale.ROOT));
+    }
+
+    private CompileOptions getCompileOptions(String sourceName, boolean literate) {
+        return new CompileOptions(sourceName, bare, getSourceMapType(), header, literate);
+    }
+
+    private CompileResult compile(Compilation compilation, String source, CompileOptions options) {
+        if (compilation.cache == null) {
+            return compileUncached(compilation, source, options);
+        }
+
+        String key = CompileCache.key(version, source, options);
+        CompileResult result = compilation.cache.get(key);
+        if (result == null) {
+            result = compileUncached(compilation, source, options);
+            compilation.cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Compile with the daemon while it is reachable, and in-process for the rest of the build once it is not.
+     */
+    private CompileResult compileUncached(Compilation compilation, String source, CompileOptions options) {
+        CompileDaemonClient daemonClient = compilation.daemon;
+        if (daemonClient != null) {
+            try {
+                return daemonClient.compile(version, getEngine(), source, options);
+            } catch (IOException e) {
+                if (compilation.daemon != null) {
+                    compilation.daemon = null;
+                    getLog().warn("Lost the compile daemon, compiling in-process: " + e.getMessage());
+                }
+            }
+        }
+        return compilation.compilers.compile(source, options);
     }
 
     public CoffeeScriptCompiler.SourceMap getSourceMapType() {
@@ -185,7 +746,30 @@ public class CoffeeScriptCompilerMojo extends AbstractMojo {
         }
     }
 
-    private List<JoinSet> findJoinSets() {
+    /**
+     * Every directory the JoinSets draw their files from.
+     */
+    List<File> getSourceDirectories() {
+        List<File> directories = Lists.newArrayList();
+        if (coffeeJoinSets != null && !coffeeJoinSets.isEmpty()) {
+            for (JoinSet joinSet : coffeeJoinSets) {
+                if (joinSet.getFileSet() != null) {
+                    directories.add(new File(joinSet.getFileSet().getDirectory()));
+                }
+                for (File orderedFile : joinSet.getOrderedFiles()) {
+                    directories.add(orderedFile.getParentFile());
+                }
+            }
+        } else {
+            directories.add(coffeeDir);
+            if (refills != null) {
+                directories.addAll(refills);
+            }
+        }
+        return directories;
+    }
+
+    List<JoinSet> findJoinSets() {
         if (coffeeJoinSets != null && !coffeeJoinSets.isEmpty()) {
             return coffeeJoinSets;
         } else {
@@ -195,64 +779,201 @@ public class CoffeeScriptCompilerMojo extends AbstractMojo {
               coffeeDirectories.addAll(refills);
             }
 
-            final ImmutableList.Builder<JoinSet> builder = ImmutableList.builder();
+            // Each root is walked on its own thread, the parallel stream keeps the results in root order
+            return ImmutableList.copyOf(coffeeDirectories.parallelStream()
+                                                         .flatMap(directory -> findJoinSetsInDirectory(directory).stream())
+                                                         .collect(toList()));
+        }
+    }
 
-            for (File directory : coffeeDirectories) {
-                builder.addAll(findJoinSetsInDirectory(directory, ".coffee", false))
-                       .addAll(findJoinSetsInDirectory(directory, ".litcoffee", true))
-                       .addAll(findJoinSetsInDirectory(directory, ".coffee.md", true));
-            }
+    /**
+     * Find the .coffee, .litcoffee and .coffee.md files below a directory in a single walk, in that order and then
+     * sorted by path so the JoinSets come out the same on every platform.
+     */
+    private List<JoinSet> findJoinSetsInDirectory(final File coffeeDir) {
+        final List<File> coffeeFiles = Lists.newArrayList();
+        final List<File> literateFiles = Lists.newArrayList();
+        final List<File> markdownFiles = Lists.newArrayList();
+
+        if (!coffeeDir.isDirectory()) {
+            getLog().warn("Unable to search for coffee files in " + coffeeDir + ": it is not a directory");
+            return Lists.newArrayList();
+        }
 
-            return builder.build();
+        try {
+            Files.walkFileTree(coffeeDir.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".coffee")) {
+                        coffeeFiles.add(file.toFile());
+                    } else if (name.endsWith(".litcoffee")) {
+                        literateFiles.add(file.toFile());
+                    } else if (name.endsWith(".coffee.md")) {
+                        markdownFiles.add(file.toFile());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
 
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    if (!(e instanceof NoSuchFileException)) {
+                        getLog().warn("Unable to search for coffee files in " + file + ": " + e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            getLog().warn("Unable to search for coffee files in " + coffeeDir + ": " + e);
         }
+
+        List<JoinSet> joinSets = Lists.newArrayList();
+        addStaticJoinSets(joinSets, coffeeDir, coffeeFiles, false);
+        addStaticJoinSets(joinSets, coffeeDir, literateFiles, true);
+        addStaticJoinSets(joinSets, coffeeDir, markdownFiles, true);
+        return joinSets;
     }
 
-  private List<JoinSet> findJoinSetsInDirectory(final File coffeeDir, final String suffix, final boolean literate) {
-        return findCoffeeFilesInDirectory(coffeeDir, suffix).stream().map(file -> {
+    private void addStaticJoinSets(List<JoinSet> joinSets, File coffeeDir, List<File> files, boolean literate) {
+        Collections.sort(files);
+        for (File file : files) {
             if (preserveSubDirectory) {
-                return new StaticJoinSet(coffeeDir, file, literate);
+                joinSets.add(new StaticJoinSet(coffeeDir, file, literate));
             } else {
-                return new StaticJoinSet(file.getParentFile(), file, literate);
+                joinSets.add(new StaticJoinSet(file.getParentFile(), file, literate));
             }
-        }).collect(toList());
+        }
+    }
+
+    private File getOutputFile(File joinSetOutputDirectory, String name, Log log) {
+        File file = new File(getOutputDirectory(joinSetOutputDirectory), name);
+        if (!file.getParentFile().exists()) {
+            log.info("Creating output path: " + file.getParentFile().getPath());
+            file.getParentFile().mkdirs();
+        }
+        return file;
     }
 
-    private List<File> findCoffeeFilesInDirectory(File coffeeDir, final String suffix) {
+    private void write(final Compilation compilation, final File joinSetOutputDirectory, final String fileName, final CompileResult contents, final Log log, final BuildReport.Unit unit) throws IOException {
+        //Create the new Javascript file path
+        File jsFile = getOutputFile(joinSetOutputDirectory, fileName + ".js", log);
 
-        List<File> coffeeFiles = Lists.newArrayList();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        byte[] js = contents.getJs().getBytes(Charsets.UTF_8);
+        countOutput(compilation, jsFile, FileUtilities.writeIfChanged(jsFile, js));
+        unit.writeMillis = BuildReport.millis(stopwatch);
+        unit.outputBytes = js.length;
 
-        File[] files = coffeeDir.listFiles();
+        if (contents.hasMap()) {
+            writeMap(compilation, joinSetOutputDirectory, fileName, contents, log, unit);
+        }
+    }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                coffeeFiles.addAll(findCoffeeFilesInDirectory(file, suffix));
-            } else {
-                if (file.getPath().endsWith(suffix)) {
-                    coffeeFiles.add(file);
-                }
-            }
+    /**
+     * Write the outputs without first copying them into byte arrays, encoding the source map straight to its file.
+     */
+    private void writeStreamed(Compilation compilation, File joinSetOutputDirectory, String fileName, CompileResult contents, Log log, BuildReport.Unit unit) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (StreamedOutput js = new StreamedOutput(getOutputFile(joinSetOutputDirectory, fileName + ".js", log))) {
+            js.getWriter().write(contents.getJs());
+            countOutput(compilation, js.getFile(), js.commit());
+            unit.outputBytes = js.getBytes();
         }
+        unit.writeMillis = BuildReport.millis(stopwatch);
 
-        return coffeeFiles;
+        if (contents.hasMap()) {
+            writeMap(compilation, joinSetOutputDirectory, fileName, contents, log, unit);
+        }
     }
 
-    private void write(final File joinSetOutputDirectory, final String fileName, final CompileResult contents) throws IOException {
-        //Create the new Javascript file path
-        File outputDirectory = coffeeOutputDirectory;
-        if (joinSetOutputDirectory != null) {
-            outputDirectory = joinSetOutputDirectory;
+    /**
+     * Encode the source map straight to its file, so the mappings are never held as a string or byte array.
+     */
+    private void writeMap(Compilation compilation, File joinSetOutputDirectory, String fileName, CompileResult contents, Log log, BuildReport.Unit unit) throws IOException {
+        // The mappings are collected while compiling, encoding and writing them is what is left to time here
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (StreamedOutput map = new StreamedOutput(getOutputFile(joinSetOutputDirectory, fileName + ".js.map", log))) {
+            contents.writeMap(map.getWriter());
+            countOutput(compilation, map.getFile(), map.commit());
+            unit.outputBytes += map.getBytes();
         }
-        File jsFile = new File(outputDirectory, fileName + ".js");
-        if (!jsFile.getParentFile().exists()) {
-            getLog().info("Creating output path: " + jsFile.getParentFile().getPath());
-            jsFile.getParentFile().mkdirs();
+        unit.sourceMapMillis += BuildReport.millis(stopwatch);
+    }
+
+    private static void countOutput(Compilation compilation, File output, boolean changed) {
+        compilation.outputs.incrementAndGet();
+        if (changed) {
+            compilation.changedOutputs.incrementAndGet();
         }
+        if (compilation.compressor != null) {
+            compilation.compressor.compress(output, changed);
+        }
+    }
 
-        Files.write(contents.getJs(), jsFile, Charsets.UTF_8);
-        if (contents.getMap() != null) {
-            File mapFile = new File(outputDirectory, fileName + ".js.map");
-            Files.write(contents.getMap(), mapFile, Charsets.UTF_8);
+    /**
+     * Everything shared by the JoinSets compiled in one run of the mojo.
+     */
+    private static class Compilation {
+        private CoffeeScriptCompilerPool compilers;
+        private CompileCache cache;
+        private CompileCache fragments;
+        private SourceLoader sources;
+        private BuildReport report;
+        private ExecutorService fileExecutor;
+        private volatile CompileDaemonClient daemon;
+        private int fileThreads;
+        private GzipCompressor compressor;
+        private boolean measureHeap;
+        private final AtomicInteger outputs = new AtomicInteger();
+        private final AtomicInteger changedOutputs = new AtomicInteger();
+    }
+
+    /**
+     * Joins the outputs of an individually compiled JoinSet in file order as they are appended, along with an index
+     * map placing each file's source map at the line its output starts on.
+     */
+    @VisibleForTesting
+    static class JoinedOutput {
+        private final Writer js;
+        private final Writer map;
+        private final BuildReport.Unit unit;
+        private int files;
+        private int line;
+        private boolean firstSection = true;
+
+        JoinedOutput(String file, Writer js, Writer map, BuildReport.Unit unit) throws IOException {
+            this.js = js;
+            this.map = map;
+            this.unit = unit;
+            if (map != null) {
+                SourceMapEncoder.writeIndexStart(file, map);
+            }
+        }
+
+        int getFiles() {
+            return files;
+        }
+
+        void append(CompileResult result, BuildReport.Unit fileUnit) throws IOException {
+            if (map != null) {
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                firstSection &= !SourceMapEncoder.writeIndexSection(line, result, firstSection, map);
+                unit.sourceMapMillis += BuildReport.millis(stopwatch);
+            }
+            js.write(result.getJs());
+            js.write('\n');
+            line += CharMatcher.is('\n').countIn(result.getJs()) + 1;
+            files++;
+
+            unit.readMillis += fileUnit.readMillis;
+            unit.compileMillis += fileUnit.compileMillis;
+            unit.inputBytes += fileUnit.inputBytes;
+        }
+
+        void finish() throws IOException {
+            if (map != null) {
+                SourceMapEncoder.writeIndexEnd(map);
+            }
         }
     }
 
@@ -0,0 +1,95 @@
+package com.theoryinpractise.coffeescript;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * A thread safe compiler for a single coffee-script version, shared by every module of a Maven reactor.
+ * <p/>
+ * The coffee-script module keeps its lexer and parser state in the engine it was loaded into, so a
+ * loaded {@link CoffeeScriptCompiler} must only be used by one thread at a time.  The pool lends each
+ * compilation a loaded compiler and creates a new one only when every loaded compiler is busy, so it never
+ * holds more compilers than the number of threads that compiled concurrently.
+ * <p/>
+ * Pools are kept in a static registry, which lives exactly as long as the plugin's class loader.  Idle
+ * compilers are only softly referenced so the JVM can reclaim them under memory pressure.
+ */
+public class CoffeeScriptCompilerPool {
+
+    private static final ConcurrentMap<String, CoffeeScriptCompilerPool> POOLS = new ConcurrentHashMap<String, CoffeeScriptCompilerPool>();
+
+    private final String version;
+    private final CoffeeScriptCompiler.Engine engine;
+    private final File bytecodeCacheDirectory;
+    private final ConcurrentLinkedDeque<SoftReference<CoffeeScriptCompiler>> idle = new ConcurrentLinkedDeque<SoftReference<CoffeeScriptCompiler>>();
+
+    public CoffeeScriptCompilerPool(String version, File bytecodeCacheDirectory) {
+        this(version, CoffeeScriptCompiler.Engine.RHINO, bytecodeCacheDirectory);
+    }
+
+    public CoffeeScriptCompilerPool(String version, CoffeeScriptCompiler.Engine engine, File bytecodeCacheDirectory) {
+        this.version = version;
+        this.engine = engine;
+        this.bytecodeCacheDirectory = bytecodeCacheDirectory;
+    }
+
+    /**
+     * The shared pool for the given coffee-script version.
+     */
+    public static CoffeeScriptCompilerPool forVersion(String version, File bytecodeCacheDirectory) {
+        return forVersion(version, CoffeeScriptCompiler.Engine.RHINO, bytecodeCacheDirectory);
+    }
+
+    /**
+     * The shared pool for the given coffee-script version running in the given engine.  Executions that keep their
+     * compiler classes in different bytecode cache directories get pools of their own, so each one's compilers are
+     * loaded from and cached in the directory it was configured with.
+     */
+    public static CoffeeScriptCompilerPool forVersion(String version, CoffeeScriptCompiler.Engine engine, File bytecodeCacheDirectory) {
+        String key = version + "|" + engine + "|" + (bytecodeCacheDirectory != null ? bytecodeCacheDirectory.getAbsolutePath() : "");
+        return POOLS.computeIfAbsent(key, k -> new CoffeeScriptCompilerPool(version, engine, bytecodeCacheDirectory));
+    }
+
+    public CompileResult compile(String coffeeScriptSource, CompileOptions options) {
+        CoffeeScriptCompiler compiler = borrow();
+        try {
+            return compiler.compile(coffeeScriptSource, options);
+        } finally {
+            release(compiler);
+        }
+    }
+
+    public CoffeeScriptCompiler borrow() {
+        SoftReference<CoffeeScriptCompiler> reference;
+        while ((reference = idle.pollFirst()) != null) {
+            CoffeeScriptCompiler compiler = reference.get();
+            if (compiler != null) {
+                return compiler;
+            }
+        }
+        return new CoffeeScriptCompiler(version, engine, bytecodeCacheDirectory);
+    }
+
+    public void release(CoffeeScriptCompiler compiler) {
+        idle.offerFirst(new SoftReference<CoffeeScriptCompiler>(compiler));
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.theoryinpractise.coffeescript;
+
+/**
+ * A JavaScript engine with a version of the coffee-script compiler loaded into it.
+ * <p/>
+ * An engine must only be used by one thread at a time, {@link CoffeeScriptCompilerPool} lends each thread its own.
+ */
+public interface CoffeeScriptEngine {
+
+    CompileResult compile(String coffeeScriptSource, CompileOptions options);
+
+}
@@ -0,0 +1,230 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Compile CoffeeScript, then keep watching the sources and recompile the JoinSets affected by each change
+ * with the already loaded compiler.  Runs until the build is interrupted.
+ *
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.COMPILE)
+public class CoffeeScriptWatchMojo extends CoffeeScriptCompilerMojo {
+
+    /**
+     * How long, in milliseconds, the sources must be quiet before a burst of changes is recompiled.
+     *
+     */
+    @Parameter(property = "watchDebounce", defaultValue = "100")
+    private Integer watchDebounce;
+
+    private final Map<WatchKey, Path> watchedDirectories = Maps.newHashMap();
+
+    /**
+     * Set when changes may have been missed, because the watch service overflowed or stopped watching a directory.
+     */
+    private boolean missedChanges;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        validateConfiguration();
+        getLog().info(describeCompiler());
+
+        // A broken source should not stop the goal from watching, so it can be fixed while watching
+        try {
+            compileJoinSets(findJoinSets());
+        } catch (MojoExecutionException e) {
+            getLog().error(e.getMessage());
+        }
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            registerSourceDirectories(watchService);
+
+            List<JoinSet> knownJoinSets = findJoinSets();
+            Map<String, Set<File>> knownFiles = describeJoinSets(knownJoinSets);
+            getLog().info(String.format("Watching %d directories for changes, interrupt the build to stop", watchedDirectories.size()));
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<File> changes = awaitChanges(watchService);
+                long start = System.currentTimeMillis();
+
+                boolean everything = missedChanges;
+                if (missedChanges) {
+                    getLog().warn("Some changes to the sources may have been missed, checking every JoinSet");
+                    missedChanges = false;
+                    registerSourceDirectories(watchService);
+                }
+
+                List<JoinSet> affected = Lists.newArrayList();
+                List<JoinSet> joinSets = findJoinSets();
+                for (JoinSet joinSet : joinSets) {
+                    joinSet.reset();
+                    Set<File> files = absoluteFiles(joinSet);
+                    Set<File> previousFiles = knownFiles.get(describe(joinSet));
+                    if (everything || !Sets.intersection(changes, files).isEmpty()
+                            || (previousFiles != null && !Sets.intersection(changes, previousFiles).isEmpty())) {
+                        affected.add(joinSet);
+                    }
+                }
+                Map<String, Set<File>> joinSetFiles = describeJoinSets(joinSets);
+
+                // A JoinSet that is gone, such as the JoinSet of a deleted source file, takes its outputs with it
+                int removed = 0;
+                for (JoinSet joinSet : knownJoinSets) {
+                    if (!joinSetFiles.containsKey(describe(joinSet))) {
+                        deleteOutputs(joinSet, getLog());
+                        removed++;
+                    }
+                }
+                knownJoinSets = joinSets;
+                knownFiles = joinSetFiles;
+
+                if (affected.isEmpty()) {
+                    if (removed > 0) {
+                        getLog().info(String.format("Removed the outputs of %d JoinSets in %d ms", removed, System.currentTimeMillis() - start));
+                    }
+                    continue;
+                }
+
+                try {
+                    compileJoinSets(affected);
+                    getLog().info(String.format("Recompiled %d JoinSets in %d ms", affected.size(), System.currentTimeMillis() - start));
+                } catch (MojoExecutionException e) {
+                    getLog().error(e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Block until something changes, then keep collecting changes until the sources have been quiet for the debounce period.
+     */
+    private Set<File> awaitChanges(WatchService watchService) throws InterruptedException, IOException {
+        Set<File> changes = Sets.newHashSet();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    missedChanges = true;
+                    continue;
+                }
+                if (directory == null) {
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    register(watchService, path, changes);
+                } else {
+                    changes.add(path.toFile().getAbsoluteFile());
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+                missedChanges = true;
+            }
+            key = watchService.poll(watchDebounce, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    /**
+     * Watch every source directory afresh, dropping whatever was watched before.
+     */
+    private void registerSourceDirectories(WatchService watchService) throws IOException {
+        for (WatchKey key : watchedDirectories.keySet()) {
+            key.cancel();
+        }
+        watchedDirectories.clear();
+        for (File directory : getSourceDirectories()) {
+            if (directory.isDirectory()) {
+                register(watchService, directory.toPath(), Sets.<File>newHashSet());
+            }
+        }
+    }
+
+    /**
+     * Watch a directory and everything below it, any files already inside are treated as changed.
+     */
+    private void register(final WatchService watchService, Path root, final Set<File> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService,
+                                            StandardWatchEventKinds.ENTRY_CREATE,
+                                            StandardWatchEventKinds.ENTRY_DELETE,
+                                            StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file.toFile().getAbsoluteFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Map<String, Set<File>> describeJoinSets(List<JoinSet> joinSets) throws IOException {
+        Map<String, Set<File>> description = Maps.newHashMap();
+        for (JoinSet joinSet : joinSets) {
+            description.put(describe(joinSet), absoluteFiles(joinSet));
+        }
+        return description;
+    }
+
+    private static Set<File> absoluteFiles(JoinSet joinSet) throws IOException {
+        Set<File> files = Sets.newHashSet();
+        for (File file : joinSet.getFiles()) {
+            files.add(file.getAbsoluteFile());
+        }
+        return files;
+    }
+
+    private static String describe(JoinSet joinSet) {
+        return joinSet.getId() + "|" + joinSet.getCoffeeOutputDirectory();
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * On-disk, content addressed cache of compiled coffee-script.
+ * <p/>
+ * Entries are keyed on a hash of the source and every option that can change the compiler output, and are
+ * written to a temporary file before being moved into place so several Maven processes can share one
+ * directory.  The last modified time of an entry is refreshed on every hit and is used to evict the least
+ * recently used entries once the cache grows beyond its size cap.
+ */
+public class CompileCache {
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private static final int FORMAT = 1;
+
+    private static final Object EVICTION_LOCK = new Object();
+
+    private final File directory;
+    private final long maxSize;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public CompileCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Build the cache key for a compilation of the given source with the given compiler options.
+     */
+    public static String key(String version, String coffeeScriptSource, CompileOptions options) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putInt(FORMAT)
+                .putString(version, Charsets.UTF_8).putByte((byte) 0)
+                .putString(options.getFilename(), Charsets.UTF_8).putByte((byte) 0)
+                .putBoolean(options.isBare())
+                .putString(options.getSourceMap().name(), Charsets.UTF_8).putByte((byte) 0)
+                .putBoolean(options.isHeader())
+                .putBoolean(options.isLiterate())
+                .putString(coffeeScriptSource, Charsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Look up a previously compiled result, returning null if there is no usable entry for the key.
+     */
+    public CompileResult get(String key) {
+        File entry = entryFile(key);
+        if (entry.isFile()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(entry))) {
+                String js = readString(in);
+                String map = readString(in);
+                entry.setLastModified(System.currentTimeMillis());
+                hits.incrementAndGet();
+                return new CompileResult(js, map);
+            } catch (IOException e) {
+                // A truncated or concurrently evicted entry is just a miss
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a compiled result.  Failing to write to the cache never fails the build.
+     */
+    public void put(String key, CompileResult result) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeString(out, result.getJs());
+                writeString(out, result.getMap());
+            }
+            FileUtilities.writeAtomically(entryFile(key), bytes.toByteArray());
+        } catch (IOException e) {
+            // The entry is simply not cached
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits within its size cap.
+     * <p/>
+     * Eviction is serialised between processes with a lock file in the cache directory.
+     */
+    public void evict() throws IOException {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        synchronized (EVICTION_LOCK) {
+            File lockFile = new File(directory, ".lock");
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+
+                File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+                if (entries == null) {
+                    return;
+                }
+
+                long size = 0;
+                for (File entry : entries) {
+                    size += entry.length();
+                }
+                if (size <= maxSize) {
+                    return;
+                }
+
+                Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+                for (File entry : entries) {
+                    if (size <= maxSize) {
+                        break;
+                    }
+                    long length = entry.length();
+                    if (entry.delete()) {
+                        size -= length;
+                    }
+                }
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+}
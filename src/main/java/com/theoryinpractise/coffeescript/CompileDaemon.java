@@ -0,0 +1,347 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * A long lived compile server, keeping warm coffee-script compilers for every version and engine it is asked for so
+ * repeated builds skip loading the compiler and compile at the speed of an already optimised JVM.
+ * <p/>
+ * The server only listens on the loopback address, and every connection must start with the random token written to
+ * the state file in its directory, which only the user running it can read.  The token is a fixed size frame read
+ * before anything else, so a peer without it can neither make the daemon allocate a large request nor keep a
+ * connection waiting.  Requests and responses are JSON, each preceded by its length.  The server stops itself once
+ * it has been idle for the idle timeout.
+ * <p/>
+ * The daemon runs without Maven on its classpath, so it must not use any Maven classes.
+ */
+public class CompileDaemon {
+
+    /**
+     * Changed whenever requests or responses change, so a client never talks to a daemon from another plugin version.
+     */
+    static final int PROTOCOL = 2;
+
+    /**
+     * Length of the token frame every connection starts with, the ASCII form of a random UUID.
+     */
+    static final int TOKEN_LENGTH = 36;
+
+    private static final int AUTHENTICATION_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_CONNECTIONS = 64;
+    private static final int MAX_MESSAGE_LENGTH = 512 * 1024 * 1024;
+
+    static final ObjectMapper MAPPER = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final File directory;
+    private final long idleTimeoutMillis;
+    private final File bytecodeCacheDirectory;
+    private final String token = UUID.randomUUID().toString();
+    private final long started = System.currentTimeMillis();
+    private final AtomicLong lastActivity = new AtomicLong(started);
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Set<String> compilers = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * @param directory              where the state file is written
+     * @param idleTimeoutMillis      how long the daemon waits without requests before stopping
+     * @param bytecodeCacheDirectory where Rhino keeps the classes it generates, or null to not keep them
+     */
+    public CompileDaemon(File directory, long idleTimeoutMillis, File bytecodeCacheDirectory) {
+        this.directory = directory;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.bytecodeCacheDirectory = bytecodeCacheDirectory;
+    }
+
+    /**
+     * Usage: CompileDaemon directory idleTimeoutMinutes (bytecodeCacheDirectory|-) [version:engine ...]
+     */
+    public static void main(String[] args) throws IOException {
+        CompileDaemon daemon = new CompileDaemon(new File(args[0]),
+                                                 TimeUnit.MINUTES.toMillis(Long.parseLong(args[1])),
+                                                 "-".equals(args[2]) ? null : new File(args[2]));
+        for (int i = 3; i < args.length; i++) {
+            String[] compiler = args[i].split(":");
+            daemon.preload(compiler[0], CoffeeScriptCompiler.Engine.valueOf(compiler[1]));
+        }
+        daemon.run();
+    }
+
+    /**
+     * Load a compiler before the first build asks for it.
+     */
+    public void preload(String version, CoffeeScriptCompiler.Engine engine) {
+        CoffeeScriptCompilerPool pool = getPool(version, engine);
+        pool.release(pool.borrow());
+    }
+
+    /**
+     * Serve requests until stopped or idle for longer than the idle timeout.
+     */
+    public void run() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("coffee-daemon-%d").setDaemon(true).build());
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(1000);
+            writeState(server.getLocalPort());
+
+            while (running) {
+                try {
+                    Socket socket = server.accept();
+                    if (connections.incrementAndGet() > MAX_CONNECTIONS) {
+                        connections.decrementAndGet();
+                        socket.close();
+                        continue;
+                    }
+                    executor.execute(() -> serve(socket));
+                } catch (SocketTimeoutException e) {
+                    if (connections.get() == 0 && System.currentTimeMillis() - lastActivity.get() > idleTimeoutMillis) {
+                        running = false;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            deleteState();
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Answer requests on one connection until the client closes it, clients keep connections open between compilations.
+     * A connection that does not start with the token is closed without reading anything else.
+     */
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            connection.setSoTimeout(AUTHENTICATION_TIMEOUT_MILLIS);
+            byte[] presented = new byte[TOKEN_LENGTH];
+            in.readFully(presented);
+            if (!MessageDigest.isEqual(presented, token.getBytes(StandardCharsets.US_ASCII))) {
+                return;
+            }
+            connection.setSoTimeout(0);
+
+            Request request;
+            while ((request = read(in, Request.class)) != null) {
+                lastActivity.set(System.currentTimeMillis());
+                write(out, respond(request));
+                lastActivity.set(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            // The client went away, it falls back to compiling in-process
+        } finally {
+            connections.decrementAndGet();
+        }
+    }
+
+    private Response respond(Request request) {
+        Response response = new Response();
+        if ("compile".equals(request.command)) {
+            try {
+                CompileOptions options = new CompileOptions(request.filename, request.bare, request.sourceMap, request.header, request.literate);
+                CompileResult result = getPool(request.version, request.engine).compile(request.source, options);
+                compilations.incrementAndGet();
+                response.js = result.getJs();
+                response.map = result.hasMap() ? result.getMap() : null;
+            } catch (RuntimeException e) {
+                response.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+        } else if ("status".equals(request.command)) {
+            response.status = getStatus();
+        } else if ("stop".equals(request.command)) {
+            response.status = getStatus();
+            stop();
+        } else {
+            response.error = "Unknown command " + request.command;
+        }
+        return response;
+    }
+
+    private CoffeeScriptCompilerPool getPool(String version, CoffeeScriptCompiler.Engine engine) {
+        compilers.add(version + " on " + engine);
+        return CoffeeScriptCompilerPool.forVersion(version, engine, bytecodeCacheDirectory);
+    }
+
+    private Status getStatus() {
+        Status status = new Status();
+        status.pid = getPid();
+        status.uptimeSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - started);
+        status.idleTimeoutSeconds = TimeUnit.MILLISECONDS.toSeconds(idleTimeoutMillis);
+        status.compilations = compilations.get();
+        status.compilers = Lists.newArrayList(compilers);
+        status.compilers.sort(null);
+        return status;
+    }
+
+    private void writeState(int port) throws IOException {
+        State state = new State();
+        state.protocol = PROTOCOL;
+        state.pid = getPid();
+        state.port = port;
+        state.token = token;
+
+        directory.mkdirs();
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+        }
+        File temp = File.createTempFile("daemon", ".tmp", directory);
+        Files.write(temp.toPath(), MAPPER.writeValueAsBytes(state));
+        Files.move(temp.toPath(), getStateFile(directory).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove the state file, unless a newer daemon has already replaced it.
+     */
+    private void deleteState() {
+        State state = readState(directory);
+        if (state != null && token.equals(state.token)) {
+            getStateFile(directory).delete();
+        }
+    }
+
+    static File getStateFile(File directory) {
+        return new File(directory, "daemon.json");
+    }
+
+    /**
+     * The state of the daemon last started in the directory, or null if there is none.
+     */
+    static State readState(File directory) {
+        File file = getStateFile(directory);
+        if (file.isFile()) {
+            try {
+                return MAPPER.readValue(file, State.class);
+            } catch (IOException e) {
+                // Treated as no daemon, a new one will replace it
+            }
+        }
+        return null;
+    }
+
+    private static String getPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        return name.contains("@") ? name.substring(0, name.indexOf('@')) : name;
+    }
+
+    static <T> T read(DataInputStream in, Class<T> type) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+            throw new IOException("Invalid message length " + length);
+        }
+        byte[] message = new byte[length];
+        in.readFully(message);
+        return MAPPER.readValue(message, type);
+    }
+
+    static void write(DataOutputStream out, Object message) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(message);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    public static class State {
+        public int protocol;
+        public String pid;
+        public int port;
+        public String token;
+    }
+
+    /**
+     * Send the token frame that has to start every connection.
+     */
+    static void authenticate(DataOutputStream out, String token) throws IOException {
+        byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length != TOKEN_LENGTH) {
+            throw new IOException("Invalid token");
+        }
+        out.write(bytes);
+        out.flush();
+    }
+
+    public static class Request {
+        public String command;
+        public String version;
+        public CoffeeScriptCompiler.Engine engine;
+        public String source;
+        public String filename;
+        public boolean bare;
+        public CoffeeScriptCompiler.SourceMap sourceMap;
+        public boolean header;
+        public boolean literate;
+    }
+
+    public static class Response {
+        public String js;
+        public String map;
+        public String error;
+        public Status status;
+    }
+
+    public static class Status {
+        public String pid;
+        public long uptimeSeconds;
+        public long idleTimeoutSeconds;
+        public long compilations;
+        public List<String> compilers;
+    }
+
+}
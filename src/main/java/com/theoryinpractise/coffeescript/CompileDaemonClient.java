@@ -0,0 +1,170 @@
+package com.theoryinpractise.coffeescript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Talks to a {@link CompileDaemon}.  Each thread borrows an open connection for its request, so compilations from
+ * several threads run in the daemon concurrently, and connections are kept open until the client is closed.
+ */
+public class CompileDaemonClient implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final CompileDaemon.State state;
+    private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<Connection>();
+
+    private CompileDaemonClient(CompileDaemon.State state) {
+        this.state = state;
+    }
+
+    /**
+     * Connect to the daemon started in the directory, returning null when none is running or it runs another protocol.
+     */
+    public static CompileDaemonClient connect(File directory) {
+        CompileDaemon.State state = CompileDaemon.readState(directory);
+        if (state == null || state.protocol != CompileDaemon.PROTOCOL) {
+            return null;
+        }
+
+        CompileDaemonClient client = new CompileDaemonClient(state);
+        try {
+            client.status();
+            return client;
+        } catch (IOException e) {
+            client.close();
+            return null;
+        }
+    }
+
+    public CompileResult compile(String version, CoffeeScriptCompiler.Engine engine, String source, CompileOptions options) throws IOException {
+        CompileDaemon.Request request = request("compile");
+        request.version = version;
+        request.engine = engine;
+        request.source = source;
+        request.filename = options.getFilename();
+        request.bare = options.isBare();
+        request.sourceMap = options.getSourceMap();
+        request.header = options.isHeader();
+        request.literate = options.isLiterate();
+
+        CompileDaemon.Response response = send(request);
+        if (response.error != null) {
+            throw new CoffeeScriptException(response.error);
+        }
+        return response.map != null ? new CompileResult(response.js, response.map) : new CompileResult(response.js);
+    }
+
+    public CompileDaemon.Status status() throws IOException {
+        return checked(send(request("status"))).status;
+    }
+
+    /**
+     * Ask the daemon to stop, returning its final status.
+     */
+    public CompileDaemon.Status stop() throws IOException {
+        return checked(send(request("stop"))).status;
+    }
+
+    public String getPid() {
+        return state.pid;
+    }
+
+    public int getPort() {
+        return state.port;
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    private CompileDaemon.Request request(String command) {
+        CompileDaemon.Request request = new CompileDaemon.Request();
+        request.command = command;
+        return request;
+    }
+
+    private static CompileDaemon.Response checked(CompileDaemon.Response response) throws IOException {
+        if (response.error != null) {
+            throw new IOException(response.error);
+        }
+        return response;
+    }
+
+    private CompileDaemon.Response send(CompileDaemon.Request request) throws IOException {
+        Connection connection = idle.pollFirst();
+        if (connection == null) {
+            connection = new Connection(state.port, state.token);
+        }
+
+        try {
+            CompileDaemon.write(connection.out, request);
+            CompileDaemon.Response response = CompileDaemon.read(connection.in, CompileDaemon.Response.class);
+            if (response == null) {
+                throw new IOException("The compile daemon closed the connection");
+            }
+            idle.offerFirst(connection);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(int port, String token) throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                CompileDaemon.authenticate(out, token);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do with a connection that failed to close
+            }
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Start a compile daemon in the background, which the coffee goal uses when its daemon parameter is set.
+ * <p/>
+ * The daemon is a separate JVM running this plugin's classes, it keeps running between builds until stopped with
+ * the daemon-stop goal or until it has been idle for the idle timeout.
+ */
+@Mojo(name = "daemon-start", requiresProject = false)
+public class CompileDaemonStartMojo extends AbstractCompileDaemonMojo {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * How long, in minutes, the daemon keeps running without any compilations.
+     *
+     */
+    @Parameter(property = "daemonIdleTimeout", defaultValue = "60")
+    private Integer daemonIdleTimeout;
+
+    /**
+     * Extra arguments for the daemon's JVM, such as "-Xmx512m".
+     *
+     */
+    @Parameter(property = "daemonJvmArgs")
+    private String daemonJvmArgs;
+
+    /**
+     * Version of Coffee-Script the daemon loads as it starts, other versions are loaded when first used.
+     *
+     */
+    @Parameter(defaultValue = "1.10.0")
+    private String version;
+
+    /**
+     * JavaScript engine the daemon loads as it starts, "rhino" or "graaljs".
+     *
+     */
+    @Parameter(property = "engine", defaultValue = "rhino")
+    private String engine;
+
+    /**
+     * Should the JVM classes Rhino generates when loading the coffee-script compiler be kept on disk?
+     *
+     */
+    @Parameter(property = "bytecodeCache", defaultValue = "true")
+    private Boolean bytecodeCache;
+
+    /**
+     * Location of the cached coffee-script compiler classes.
+     *
+     */
+    @Parameter(property = "bytecodeCacheDirectory", defaultValue = "${user.home}/.coffee-maven-plugin/rhino")
+    private File bytecodeCacheDirectory;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor plugin;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        CoffeeScriptCompiler.Engine selectedEngine = CoffeeScriptCompilerMojo.parseEngine(engine);
+
+        try (CompileDaemonClient running = CompileDaemonClient.connect(daemonDirectory)) {
+            if (running != null) {
+                logStatus("already running", running, running.status());
+                return;
+            }
+        } catch (IOException e) {
+            // Stopped since connecting, start a new one
+        }
+
+        List<String> command = Lists.newArrayList(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if (daemonJvmArgs != null) {
+            command.addAll(Splitter.on(' ').omitEmptyStrings().splitToList(daemonJvmArgs));
+        }
+        command.add("-cp");
+        command.add(getClasspath());
+        command.add(CompileDaemon.class.getName());
+        command.add(daemonDirectory.getAbsolutePath());
+        command.add(String.valueOf(daemonIdleTimeout));
+        command.add(bytecodeCache ? bytecodeCacheDirectory.getAbsolutePath() : "-");
+        command.add(version + ":" + selectedEngine);
+
+        File logFile = new File(daemonDirectory, "daemon.log");
+        daemonDirectory.mkdirs();
+        getLog().info("Starting compile daemon, logging to " + logFile.getPath());
+
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                    .start();
+            process.getOutputStream().close();
+
+            long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+            while (System.currentTimeMillis() < deadline) {
+                CompileDaemonClient client = CompileDaemonClient.connect(daemonDirectory);
+                if (client != null) {
+                    try {
+                        logStatus("started", client, client.status());
+                        return;
+                    } finally {
+                        client.close();
+                    }
+                }
+                if (!process.isAlive()) {
+                    throw new MojoExecutionException("The compile daemon failed to start, see " + logFile.getPath());
+                }
+                Thread.sleep(100);
+            }
+            process.destroy();
+            throw new MojoExecutionException("The compile daemon did not start within 60 seconds, see " + logFile.getPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to start the compile daemon: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while starting the compile daemon", e);
+        }
+    }
+
+    /**
+     * The plugin and its dependencies, including any added to the plugin in the project, such as GraalJS.
+     */
+    private String getClasspath() {
+        List<String> classpath = Lists.newArrayList(plugin.getPluginArtifact().getFile().getAbsolutePath());
+        for (Artifact artifact : plugin.getArtifacts()) {
+            if (artifact.getFile() != null) {
+                classpath.add(artifact.getFile().getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, classpath);
+    }
+
+}
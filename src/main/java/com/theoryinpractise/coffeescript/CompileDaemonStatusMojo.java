@@ -0,0 +1,42 @@
+package com.theoryinpractise.coffeescript;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Report whether the compile daemon is running, and what it has compiled.
+ */
+@Mojo(name = "daemon-status", requiresProject = false)
+public class CompileDaemonStatusMojo extends AbstractCompileDaemonMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        try (CompileDaemonClient client = CompileDaemonClient.connect(daemonDirectory)) {
+            if (client == null) {
+                getLog().info("No compile daemon is running");
+                return;
+            }
+            logStatus("running", client, client.status());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to get the status of the compile daemon: " + e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.theoryinpractise.coffeescript;
+
+/**
+ * The options passed to the coffee-script compile function for a single compilation.
+ */
+public class CompileOptions {
+
+    private final String filename;
+    private final boolean bare;
+    private final CoffeeScriptCompiler.SourceMap sourceMap;
+    private final boolean header;
+    private final boolean literate;
+
+    public CompileOptions(String filename, boolean bare, CoffeeScriptCompiler.SourceMap sourceMap, boolean header, boolean literate) {
+        this.filename = filename;
+        this.bare = bare;
+        this.sourceMap = sourceMap;
+        this.header = header;
+        this.literate = literate;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public boolean isBare() {
+        return bare;
+    }
+
+    public CoffeeScriptCompiler.SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    public boolean isHeader() {
+        return header;
+    }
+
+    public boolean isLiterate() {
+        return literate;
+    }
+
+}
@@ -1,20 +1,51 @@
 package com.theoryinpractise.coffeescript;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class CompileResult {
 
     private String js;
     private String map;
+    private SourceMapping mapping;
+
+    public CompileResult(String js) {
+        this.js = js;
+    }
 
     public CompileResult(String js, String map) {
         this.js = js;
         this.map = map;
     }
 
+    public CompileResult(String js, SourceMapping mapping) {
+        this.js = js;
+        this.mapping = mapping;
+    }
+
     public String getJs() {
         return js;
     }
 
     public String getMap() {
+        if (map == null && mapping != null) {
+            return SourceMapEncoder.encode(mapping);
+        }
         return map;
     }
+
+    public boolean hasMap() {
+        return map != null || mapping != null;
+    }
+
+    /**
+     * Write the source map, encoding it straight to the writer when it has not been encoded yet.
+     */
+    public void writeMap(Writer writer) throws IOException {
+        if (map == null && mapping != null) {
+            SourceMapEncoder.write(mapping, writer);
+        } else if (map != null) {
+            writer.write(map);
+        }
+    }
 }
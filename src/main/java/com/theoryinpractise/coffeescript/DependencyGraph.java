@@ -0,0 +1,237 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * The files each source file requires with "#= require name" directives, used to order the files of a JoinSet so
+ * every file comes after the files it requires.
+ * <p/>
+ * Directives are only read from the comments and blank lines at the top of a file.  A name is resolved relative to
+ * the requiring file, with or without its .coffee, .litcoffee or .coffee.md extension, and otherwise matched against
+ * the end of the path of the other files in the JoinSet.  A name that matches none of them, such as a vendor library
+ * pulled in some other way, is only warned about.  The directives of each file are kept by size and last modified
+ * time, so later builds only read the files that changed.
+ */
+public class DependencyGraph {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern REQUIRE = Pattern.compile("^#=\\s*require\\s+(\\S+)\\s*$");
+
+    private static final String[] EXTENSIONS = {"", ".coffee", ".litcoffee", ".coffee.md"};
+
+    private final File file;
+    private final State state;
+    private final Map<String, Entry> used = new HashMap<String, Entry>();
+
+    private DependencyGraph(File file, State state) {
+        this.file = file;
+        this.state = state;
+    }
+
+    /**
+     * A graph that is not kept between builds.
+     */
+    public DependencyGraph() {
+        this(null, new State());
+    }
+
+    /**
+     * Load the directives recorded by a previous build, starting afresh if they are missing or unreadable.
+     */
+    public static DependencyGraph load(File file) {
+        if (file.isFile()) {
+            try {
+                return new DependencyGraph(file, MAPPER.readValue(file, State.class));
+            } catch (IOException e) {
+                // Every file's directives are read again
+            }
+        }
+        return new DependencyGraph(file, new State());
+    }
+
+    /**
+     * Save the directives of the files used since the graph was loaded, dropping files no longer in any JoinSet.
+     */
+    public synchronized void save() throws IOException {
+        if (file != null) {
+            State saved = new State();
+            saved.entries.putAll(used);
+            file.getParentFile().mkdirs();
+            MAPPER.writeValue(file, saved);
+        }
+    }
+
+    /**
+     * The names the file requires, in the order of its directives.
+     */
+    public synchronized List<String> getRequires(File source) throws IOException {
+        String key = source.getAbsolutePath();
+        Entry entry = state.entries.get(key);
+        if (entry == null || entry.length != source.length() || entry.lastModified != source.lastModified()) {
+            entry = new Entry();
+            entry.length = source.length();
+            entry.lastModified = source.lastModified();
+            entry.requires = parse(source);
+            state.entries.put(key, entry);
+        }
+        used.put(key, entry);
+        return entry.requires;
+    }
+
+    /**
+     * Order the files so every file comes after the files it requires, otherwise keeping them in the order given.
+     * Requires of files outside the JoinSet are logged and left out of the ordering.
+     *
+     * @throws IOException if files require each other in a cycle
+     */
+    public List<File> sort(String joinSetId, List<File> files, Log log) throws IOException {
+        Map<Path, File> members = new LinkedHashMap<Path, File>();
+        for (File source : files) {
+            members.put(normalize(source), source);
+        }
+
+        Map<File, List<File>> requires = new HashMap<File, List<File>>();
+        for (File source : members.values()) {
+            List<File> resolved = new ArrayList<File>();
+            for (String name : getRequires(source)) {
+                File required = resolve(source, name, members);
+                if (required == null) {
+                    log.warn(String.format("%s in JoinSet %s requires %s, which is not part of the JoinSet, the require is ignored", source.getPath(), joinSetId, name));
+                } else {
+                    resolved.add(required);
+                }
+            }
+            requires.put(source, resolved);
+        }
+
+        List<File> sorted = new ArrayList<File>(members.size());
+        Set<File> done = new HashSet<File>();
+        for (File source : members.values()) {
+            visit(joinSetId, source, requires, new LinkedHashSet<File>(), done, sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * Add the file after everything it requires, depth first, with the files being visited kept to report cycles.
+     */
+    private static void visit(String joinSetId, File source, Map<File, List<File>> requires, LinkedHashSet<File> visiting, Set<File> done, List<File> sorted) throws IOException {
+        if (done.contains(source)) {
+            return;
+        }
+        if (!visiting.add(source)) {
+            List<String> cycle = new ArrayList<String>();
+            boolean inCycle = false;
+            for (File file : visiting) {
+                inCycle |= file.equals(source);
+                if (inCycle) {
+                    cycle.add(file.getName());
+                }
+            }
+            cycle.add(source.getName());
+            throw new IOException(String.format("Circular require in JoinSet %s: %s", joinSetId, Joiner.on(" -> ").join(cycle)));
+        }
+
+        for (File required : requires.get(source)) {
+            visit(joinSetId, required, requires, visiting, done, sorted);
+        }
+        visiting.remove(source);
+        done.add(source);
+        sorted.add(source);
+    }
+
+    private static File resolve(File source, String name, Map<Path, File> members) {
+        for (String extension : EXTENSIONS) {
+            File required = members.get(normalize(new File(source.getParentFile(), name + extension)));
+            if (required != null) {
+                return required;
+            }
+        }
+
+        String suffix = "/" + name.replace(File.separatorChar, '/');
+        for (Map.Entry<Path, File> member : members.entrySet()) {
+            String path = member.getKey().toString().replace(File.separatorChar, '/');
+            for (String extension : EXTENSIONS) {
+                if (path.endsWith(suffix + extension)) {
+                    return member.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Path normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Read the directives from the leading comments and blank lines of the file.
+     */
+    static List<String> parse(File source) throws IOException {
+        List<String> requires = new ArrayList<String>();
+        try (BufferedReader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!line.startsWith("#")) {
+                    break;
+                }
+                Matcher matcher = REQUIRE.matcher(line);
+                if (matcher.matches()) {
+                    requires.add(matcher.group(1));
+                }
+            }
+        }
+        return requires;
+    }
+
+    public static class State {
+        public Map<String, Entry> entries = new TreeMap<String, Entry>();
+    }
+
+    public static class Entry {
+        public long length;
+        public long lastModified;
+        public List<String> requires;
+    }
+
+}
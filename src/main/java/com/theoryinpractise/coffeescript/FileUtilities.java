@@ -1,6 +1,7 @@
 package com.theoryinpractise.coffeescript;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.apache.maven.model.FileSet;
 import org.codehaus.plexus.util.FileUtils;
@@ -8,6 +9,9 @@ import org.codehaus.plexus.util.FileUtils;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
 import java.util.List;
 
@@ -125,4 +129,39 @@ public class FileUtilities {
 
 		return files;
 	}
+
+	/**
+	 * Write a file atomically unless it already has exactly the given contents, leaving an unchanged file and its
+	 * timestamp untouched.  Only files of the same size are read back to compare their contents.
+	 *
+	 * @return true if the file was written
+	 */
+	public static boolean writeIfChanged(File file, byte[] contents) throws IOException {
+		if (file.isFile() && file.length() == contents.length
+				&& com.google.common.io.Files.asByteSource(file).contentEquals(ByteSource.wrap(contents))) {
+			return false;
+		}
+		writeAtomically(file, contents);
+		return true;
+	}
+
+	/**
+	 * Write a file through a temporary file in the same directory which is then moved into place, so concurrent
+	 * readers never see a partially written file.
+	 */
+	public static void writeAtomically(File file, byte[] contents) throws IOException {
+		File directory = file.getParentFile();
+		directory.mkdirs();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			Files.write(temp.toPath(), contents);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
 }
@@ -0,0 +1,196 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Runs the coffee-script compiler in GraalJS, loading its modules with a minimal CommonJS require.
+ * <p/>
+ * Every engine shares one polyglot Engine, so the coffee-script modules are parsed once per JVM and later
+ * compilers reuse the code already parsed and optimised for the first.
+ */
+class GraalJsCoffeeScriptEngine implements CoffeeScriptEngine {
+
+    private static final Engine ENGINE = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+
+    private static final ConcurrentMap<String, Source> SOURCES = new ConcurrentHashMap<String, Source>();
+
+    /**
+     * Helpers run inside the engine, mirroring what the Rhino engine does through Rhino's Java API.  The raw source
+     * mappings are flattened into a single string so reading them takes one call rather than one per mapping.
+     */
+    private static final String SUPPORT = "({\n"
+            + "  newModule: function(id) { return {id: id, exports: {}}; },\n"
+            + "  options: function(bare, sourceMap, literate, header, filename) {\n"
+            + "    return {bare: bare, sourceMap: sourceMap, literate: literate, header: header, filename: filename};\n"
+            + "  },\n"
+            + "  disableSourceMapGeneration: function(compile, options) {\n"
+            + "    var result = compile('', options);\n"
+            + "    var prototype = result && result.sourceMap && Object.getPrototypeOf(result.sourceMap);\n"
+            + "    if (prototype && typeof prototype.generate === 'function') {\n"
+            + "      prototype.generate = function() { return null; };\n"
+            + "    }\n"
+            + "  },\n"
+            + "  mappings: function(sourceMap) {\n"
+            + "    var columnMappings = !('lines' in sourceMap);\n"
+            + "    var lines = columnMappings ? sourceMap.generatedLines : sourceMap.lines;\n"
+            + "    var out = [];\n"
+            + "    for (var i = 0; i < lines.length; i++) {\n"
+            + "      var line = lines[i];\n"
+            + "      if (typeof line !== 'object' || line === null) continue;\n"
+            + "      var columns = columnMappings ? line.columnMappings : line.columns;\n"
+            + "      for (var j = 0; j < columns.length; j++) {\n"
+            + "        var entry = columns[j];\n"
+            + "        if (typeof entry !== 'object' || entry === null) continue;\n"
+            + "        out.push(columnMappings ? entry.generatedLine : entry.line,\n"
+            + "                 columnMappings ? entry.generatedColumn : entry.column,\n"
+            + "                 entry.sourceLine, entry.sourceColumn);\n"
+            + "      }\n"
+            + "    }\n"
+            + "    return out.join(',');\n"
+            + "  }\n"
+            + "})";
+
+    private final String version;
+    private final Context context;
+    private final Value support;
+    private final Value compileFunction;
+    private final Map<String, Value> modules = new HashMap<String, Value>();
+
+    GraalJsCoffeeScriptEngine(String version) {
+        this.version = version;
+        this.context = Context.newBuilder("js").engine(ENGINE).build();
+
+        try {
+            support = context.eval(Source.create("js", SUPPORT));
+            compileFunction = require("coffee-script").getMember("compile");
+            support.getMember("disableSourceMapGeneration").execute(compileFunction, toOptions(new CompileOptions("init.coffee", true, CoffeeScriptCompiler.SourceMap.V3, false, false)));
+        } catch (Exception e) {
+            context.close();
+            throw new CoffeeScriptException("Unable to load the coffeeScript compiler into GraalJS", e);
+        }
+    }
+
+    /**
+     * Is the JavaScript only interpreted, as it is on JDKs other than GraalVM?
+     */
+    static boolean isInterpreted() {
+        return "Interpreted".equals(ENGINE.getImplementationName());
+    }
+
+    @Override
+    public CompileResult compile(String coffeeScriptSource, CompileOptions options) {
+        try {
+            Value result = compileFunction.execute(coffeeScriptSource, toOptions(options));
+
+            if (options.getSourceMap() == CoffeeScriptCompiler.SourceMap.NONE) {
+                return new CompileResult(result.asString());
+            } else {
+                String js = result.getMember("js").asString();
+                return new CompileResult(js, readSourceMapping(result.getMember("sourceMap"), options.getFilename()));
+            }
+        } catch (PolyglotException e) {
+            throw new CoffeeScriptException(e.getMessage(), e);
+        }
+    }
+
+    private Value toOptions(CompileOptions options) {
+        return support.getMember("options").execute(options.isBare(),
+                                                    options.getSourceMap() != CoffeeScriptCompiler.SourceMap.NONE,
+                                                    options.isLiterate(),
+                                                    options.isHeader(),
+                                                    options.getFilename());
+    }
+
+    private SourceMapping readSourceMapping(Value sourceMap, String sourceName) {
+        SourceMapping mapping = SourceMapping.forSourceName(sourceName);
+        String mappings = support.getMember("mappings").execute(sourceMap).asString();
+
+        int[] entry = new int[4];
+        int field = 0;
+        int start = 0;
+        for (int i = 0; i <= mappings.length() && !mappings.isEmpty(); i++) {
+            if (i == mappings.length() || mappings.charAt(i) == ',') {
+                entry[field++] = Integer.parseInt(mappings.substring(start, i));
+                start = i + 1;
+                if (field == entry.length) {
+                    mapping.add(entry[0], entry[1], entry[2], entry[3]);
+                    field = 0;
+                }
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Load a module of the bundled coffee-script, which only requires its own modules from the same directory.
+     * A module is cached before it runs so circular requires see its partial exports, as they would in node.
+     */
+    private Value require(String id) throws IOException {
+        Value module = modules.get(id);
+        if (module == null) {
+            Source source = getSource(id);
+            module = support.getMember("newModule").execute(id);
+            modules.put(id, module);
+
+            ProxyExecutable require = arguments -> {
+                try {
+                    return require(resolve(arguments[0].asString()));
+                } catch (IOException e) {
+                    throw new CoffeeScriptException("Unable to load module " + arguments[0], e);
+                }
+            };
+            context.eval(source).execute(module.getMember("exports"), require, module, id + ".js", ".");
+        }
+        return module.getMember("exports");
+    }
+
+    private static String resolve(String id) {
+        String name = id.startsWith("./") ? id.substring(2) : id;
+        return name.endsWith(".js") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private Source getSource(String id) throws IOException {
+        String path = String.format("coffee-script-%s/%s.js", version, id);
+        Source source = SOURCES.get(path);
+        if (source == null) {
+            URL resource = getClass().getResource("/" + path);
+            if (resource == null) {
+                throw new IOException("Cannot find module '" + id + "'");
+            }
+            String code = "(function (exports, require, module, __filename, __dirname) {" + Resources.toString(resource, Charsets.UTF_8) + "\n})";
+            source = Source.newBuilder("js", code, path).buildLiteral();
+            SOURCES.putIfAbsent(path, source);
+        }
+        return source;
+    }
+
+}
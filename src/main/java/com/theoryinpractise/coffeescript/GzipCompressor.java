@@ -0,0 +1,148 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Writes a .gz copy of outputs at maximum compression next to them, so servers can send precompressed files rather
+ * than compressing every response.
+ * <p/>
+ * Outputs are compressed in the background while the build carries on, and {@link #await(Log)} waits for them and
+ * logs the compressed sizes.  The gzip header carries no timestamp, so the same output always compresses to the same
+ * bytes.
+ */
+public class GzipCompressor implements Closeable {
+
+    private final ExecutorService executor;
+    private final List<Future<Compressed>> compressions = new ArrayList<Future<Compressed>>();
+
+    public GzipCompressor(int threads) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), CoffeeScriptCompilerMojo.daemonThreadFactory("coffee-gzip-%d"));
+    }
+
+    public static File getCompressedFile(File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    /**
+     * Compress the output when it changed, or when its compressed copy is missing or older than the output.
+     */
+    public void compress(File file, boolean changed) {
+        File compressed = getCompressedFile(file);
+        if (changed || !compressed.isFile() || compressed.lastModified() < file.lastModified()) {
+            synchronized (compressions) {
+                compressions.add(executor.submit(() -> compress(file, compressed)));
+            }
+        }
+    }
+
+    /**
+     * Wait for every output to be compressed, logging the compressed sizes.
+     *
+     * @return the number of outputs compressed
+     */
+    public int await(Log log) throws IOException {
+        List<Compressed> results = new ArrayList<Compressed>();
+        List<Future<Compressed>> pending;
+        synchronized (compressions) {
+            pending = new ArrayList<Future<Compressed>>(compressions);
+            compressions.clear();
+        }
+
+        for (Future<Compressed> compression : pending) {
+            try {
+                results.add(Uninterruptibles.getUninterruptibly(compression));
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            }
+        }
+
+        if (!results.isEmpty()) {
+            results.sort(Comparator.comparing(result -> result.file.getPath()));
+            log.info(String.format("Compressed %d outputs:", results.size()));
+            for (Compressed result : results) {
+                log.info(String.format("  %s: %d bytes, %d bytes compressed (%.0f%%)",
+                                       result.file.getPath(), result.bytes, result.compressedBytes,
+                                       result.bytes > 0 ? 100.0 * result.compressedBytes / result.bytes : 100.0));
+            }
+        }
+        return results.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static Compressed compress(File file, File compressed) throws IOException {
+        File temp = File.createTempFile(compressed.getName(), ".tmp", compressed.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BestCompressionGZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                Files.copy(file.toPath(), out);
+            }
+            try {
+                Files.move(temp.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), compressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+
+        Compressed result = new Compressed();
+        result.file = compressed;
+        result.bytes = file.length();
+        result.compressedBytes = compressed.length();
+        return result;
+    }
+
+    private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+        private BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    private static class Compressed {
+        private File file;
+        private long bytes;
+        private long compressedBytes;
+    }
+
+}
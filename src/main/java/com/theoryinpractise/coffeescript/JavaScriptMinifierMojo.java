@@ -1,17 +1,33 @@
 package com.theoryinpractise.coffeescript;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import org.apache.maven.model.FileSet;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copyright 2011 Mark Derricutt.
@@ -53,35 +69,297 @@ public class JavaScriptMinifierMojo extends AbstractMojo {
   @Parameter
   private FileSet setOfFilesToMinify;
 
+  /**
+   * Should minification be skipped when the inputs, their order and the Closure settings are unchanged since the
+   * minified file was last written?
+   */
+  @Parameter(property = "incremental", defaultValue = "true")
+  private Boolean incremental;
+
+  /**
+   * Should the time spent minifying be saved as a JSON report in the build state directory?
+   */
+  @Parameter(property = "buildReport", defaultValue = "true")
+  private Boolean buildReport;
+
+  /**
+   * Number of the slowest minified bundles and files from the build report to log.
+   */
+  @Parameter(property = "buildReportSlowest", defaultValue = "5")
+  private Integer buildReportSlowest;
+
+  /**
+   * Should minification be logged when it got slower since the previous build report?
+   */
+  @Parameter(property = "buildReportCompare", defaultValue = "false")
+  private Boolean buildReportCompare;
+
+  /**
+   * Location used to keep track of the state of previous builds.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/coffee-maven-plugin")
+  private File buildStateDirectory;
+
+  /**
+   * Externs files declaring the project's own external variables, used in addition to Closure's default externs.
+   */
+  @Parameter
+  private List<File> externs;
+
+  /**
+   * Several bundles of files, each minified into its own file.  When present, minifiedFile, directoryOfFilesToMinify
+   * and setOfFilesToMinify are ignored.
+   */
+  @Parameter
+  private List<MinifyBundle> minifyBundles;
+
+  /**
+   * Should each file be minified on its own into a &lt;name&gt;.min.js file next to it, rather than every file into
+   * one minified file?  Files already named .min.js are not minified again.
+   */
+  @Parameter(property = "minifyEachFile", defaultValue = "false")
+  private Boolean minifyEachFile;
+
+  /**
+   * Number of bundles, or files when minifying each file, to minify at once, either a plain thread count or a
+   * multiple of the available cores such as "1C".
+   */
+  @Parameter(property = "threads", defaultValue = "1")
+  private String threads;
+
+  /**
+   * Should a copy of each minified file be written at maximum compression as a .gz file next to it?  Copies are only
+   * compressed again when the minified file changes.
+   */
+  @Parameter(property = "gzip", defaultValue = "false")
+  private Boolean gzip;
+
+  private GzipCompressor compressor;
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
-    try {
-      getLog().info("Minifying all Javascript Files in the Output Directory");
-      ClosureMinifier minifier = new ClosureMinifier(getLog());
+    List<MinifyBundle> bundles = findBundles();
+    BuildReport report = new BuildReport();
+    AtomicInteger upToDate = new AtomicInteger();
 
-      List<File> filesToMinify;
-      if (null != setOfFilesToMinify) {
-        getLog().debug("Configured a fileset for minification");
-        filesToMinify = FileUtilities.fileSetToFileList(setOfFilesToMinify);
+    List<String> outputs = Lists.newArrayList();
+    List<Minification> pending = Lists.newArrayList();
+    try {
+      if (minifyEachFile) {
+        for (File file : findFilesToMinifyOnTheirOwn(bundles)) {
+          File destFile = getMinifiedFile(file);
+          outputs.add(destFile.getPath());
+          pending.add(log -> {
+            if (!minify(Collections.singletonList(file), destFile, log, report)) {
+              upToDate.incrementAndGet();
+            }
+          });
+        }
       } else {
-        getLog().debug("Configured a directory for minification");
-        filesToMinify = FileUtilities.directoryToFileList(directoryOfFilesToMinify.getAbsolutePath());
+        for (MinifyBundle bundle : bundles) {
+          outputs.add(bundle.getMinifiedFile());
+          pending.add(log -> minify(bundle, log, report));
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+
+    int threadCount = Math.min(CoffeeScriptCompilerMojo.parseThreadCount(threads), pending.size());
+    ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount, CoffeeScriptCompilerMojo.daemonThreadFactory("coffee-minifier-%d")) : null;
+    compressor = gzip ? new GzipCompressor(Runtime.getRuntime().availableProcessors()) : null;
+
+    try {
+      List<BufferedLog> logs = Lists.newArrayList();
+      List<Future<Void>> minifications = Lists.newArrayList();
+
+      for (int i = 0; i < pending.size(); i++) {
+        Minification pendingMinification = pending.get(i);
+        String output = outputs.get(i);
+        Log log = executor != null ? new BufferedLog(getLog()) : getLog();
+        Callable<Void> minification = () -> {
+          try {
+            pendingMinification.minify(log);
+          } catch (Exception e) {
+            throw new MojoExecutionException(String.format("Unable to minify %s: %s", output, e.getMessage()), e);
+          }
+          return null;
+        };
+
+        if (executor != null) {
+          logs.add((BufferedLog) log);
+          minifications.add(executor.submit(minification));
+        } else {
+          minification.call();
+        }
       }
 
-      //check for dest file in source files, if present remove it.
-      List<File> filesToMinifyMinusDestFile = Lists.newArrayList();
-      for (File file : filesToMinify) {
-        if (!file.getAbsolutePath().equals(minifiedFile)) {
-          filesToMinifyMinusDestFile.add(file);
+      // Wait for the minifications in order so each one's messages stay together in the build log
+      for (int i = 0; i < minifications.size(); i++) {
+        try {
+          minifications.get(i).get();
+        } catch (ExecutionException e) {
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        } finally {
+          logs.get(i).flush();
         }
       }
 
-      getLog().info("About to minify the following files:  " + FileUtilities
-          .getCommaSeparatedListOfFileNames(filesToMinifyMinusDestFile));
+      if (upToDate.get() > 0) {
+        getLog().info(String.format("Skipped %d up to date minified files", upToDate.get()));
+      }
+
+      if (compressor != null) {
+        compressor.await(getLog());
+      }
 
-      minifier.compile(filesToMinifyMinusDestFile, minifiedFile);
+      if (buildReport) {
+        report.publish(new File(buildStateDirectory, "minify-report.json"), getLog(), buildReportSlowest, buildReportCompare);
+      }
+    } catch (MojoExecutionException e) {
+      throw e;
     } catch (Exception e) {
       throw new MojoExecutionException(e.getMessage(), e);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      if (compressor != null) {
+        compressor.close();
+      }
     }
   }
+
+  private List<MinifyBundle> findBundles() throws MojoExecutionException {
+    if (minifyBundles == null || minifyBundles.isEmpty()) {
+      return Lists.newArrayList(new MinifyBundle(setOfFilesToMinify, minifiedFile));
+    }
+
+    for (MinifyBundle bundle : minifyBundles) {
+      if (bundle.getFileSet() == null || (bundle.getMinifiedFile() == null && !minifyEachFile)) {
+        throw new MojoExecutionException("Each minify bundle requires a fileSet and a minifiedFile");
+      }
+    }
+    return minifyBundles;
+  }
+
+  /**
+   * Every file of the bundles once, leaving out the minified files already written next to them.
+   */
+  private Set<File> findFilesToMinifyOnTheirOwn(List<MinifyBundle> bundles) throws IOException {
+    Set<File> files = new LinkedHashSet<File>();
+    for (MinifyBundle bundle : bundles) {
+      for (File file : getFilesToMinify(bundle, getLog())) {
+        if (!file.getName().endsWith(".min.js")) {
+          files.add(file.getAbsoluteFile());
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * The minified file written next to a file minified on its own, app.js becoming app.min.js.
+   */
+  static File getMinifiedFile(File file) {
+    String name = file.getName();
+    String baseName = name.endsWith(".js") ? name.substring(0, name.length() - 3) : name;
+    return new File(file.getParentFile(), baseName + ".min.js");
+  }
+
+  private List<File> getFilesToMinify(MinifyBundle bundle, Log log) throws IOException {
+    if (null != bundle.getFileSet()) {
+      log.debug("Configured a fileset for minification");
+      return FileUtilities.fileSetToFileList(bundle.getFileSet());
+    } else {
+      log.debug("Configured a directory for minification");
+      return FileUtilities.directoryToFileList(directoryOfFilesToMinify.getAbsolutePath());
+    }
+  }
+
+  private void minify(MinifyBundle bundle, Log log, BuildReport report) throws IOException {
+    File destFile = new File(bundle.getMinifiedFile());
+    log.info("Minifying all Javascript Files into " + destFile.getPath());
+    List<File> filesToMinify = getFilesToMinify(bundle, log);
+
+    //check for dest file in source files, if present remove it.
+    List<File> filesToMinifyMinusDestFile = Lists.newArrayList();
+    for (File file : filesToMinify) {
+      if (!file.getAbsolutePath().equals(destFile.getAbsolutePath())) {
+        filesToMinifyMinusDestFile.add(file);
+      }
+    }
+
+    log.info("About to minify the following files:  " + FileUtilities
+        .getCommaSeparatedListOfFileNames(filesToMinifyMinusDestFile));
+
+    minify(filesToMinifyMinusDestFile, destFile, log, report);
+  }
+
+  /**
+   * Minify the files into the destination file with a Closure compiler of its own, unless it is up to date.
+   *
+   * @return false if the minified file was up to date
+   */
+  private boolean minify(List<File> filesToMinify, File destFile, Log log, BuildReport report) throws IOException {
+    ClosureMinifier minifier = new ClosureMinifier(log);
+    if (externs != null) {
+      minifier.setExterns(externs);
+    }
+    minifier.setCompressor(compressor);
+
+    File fingerprintFile = getFingerprintFile(destFile);
+    String fingerprint = incremental ? minifier.fingerprint(filesToMinify) : null;
+    if (fingerprint != null && destFile.isFile() && fingerprintFile.isFile()
+        && fingerprint.equals(Files.asCharSource(fingerprintFile, Charsets.UTF_8).read())) {
+      // Files minified on their own are summed up once all are done, rather than logged one by one
+      String message = "Skipped minification, the minified file is up to date: " + destFile.getPath();
+      if (minifyEachFile) {
+        log.debug(message);
+      } else {
+        log.info(message);
+      }
+      if (compressor != null) {
+        compressor.compress(destFile, false);
+      }
+      return false;
+    }
+
+    BuildReport.Unit unit = report.unit("minify", destFile.getPath());
+    for (File file : filesToMinify) {
+      unit.inputBytes += file.length();
+    }
+
+    destFile.getAbsoluteFile().getParentFile().mkdirs();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    minifier.compile(filesToMinify, destFile.getPath());
+    unit.minifyMillis = BuildReport.millis(stopwatch);
+    unit.outputBytes = destFile.length();
+    if (filesToMinify.size() == 1) {
+      log.info(String.format("Minified %s into %s", filesToMinify.get(0).getName(), destFile.getPath()));
+    } else {
+      log.info(String.format("Minified %d files into %s", filesToMinify.size(), destFile.getPath()));
+    }
+
+    if (fingerprint != null) {
+      FileUtilities.writeAtomically(fingerprintFile, fingerprint.getBytes(Charsets.UTF_8));
+    }
+    return true;
+  }
+
+  /**
+   * Bundles can share a file name in different directories, so the fingerprint is also keyed by the full path.
+   */
+  private File getFingerprintFile(File destFile) {
+    String pathHash = Hashing.sha256().hashString(destFile.getAbsolutePath(), Charsets.UTF_8).toString().substring(0, 8);
+    return new File(buildStateDirectory, destFile.getName() + "-" + pathHash + ".fingerprint");
+  }
+
+  /**
+   * A bundle or a single file waiting to be minified.
+   */
+  private interface Minification {
+    void minify(Log log) throws Exception;
+  }
 }
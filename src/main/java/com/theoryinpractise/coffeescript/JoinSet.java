@@ -1,12 +1,9 @@
 package com.theoryinpractise.coffeescript;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.CharStreams;
-import com.google.common.io.Files;
 import org.apache.maven.model.FileSet;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -121,6 +118,13 @@ public class JoinSet {
     	return files;
     }
 
+    /**
+     * Order the files so each comes after the files it requires with "#= require" directives.
+     */
+    public void sortByRequires(DependencyGraph graph, Log log) throws IOException {
+        files = graph.sort(getId(), getFiles(), log);
+    }
+
     public String getFileNames() throws IOException {
     	StringBuilder joinSetFileNames = new StringBuilder();
 
@@ -133,25 +137,36 @@ public class JoinSet {
     }
 
     public String getConcatenatedStringOfFiles() throws IOException{
-    	if(null==concatenatedStringOfFiles){
-    		StringBuilder sb = new StringBuilder();
+        try (SourceLoader loader = new SourceLoader(1)) {
+            return getConcatenatedStringOfFiles(loader);
+        }
+    }
 
+    /**
+     * Concatenate the files through a loader shared with other JoinSets, so files included in several JoinSets
+     * are only read once.
+     */
+    public String getConcatenatedStringOfFiles(SourceLoader loader) throws IOException{
+    	if(null==concatenatedStringOfFiles){
         	for (File file : getFiles()) {
                 if (!file.exists()) {
                     throw new IOException(String.format("JoinSet %s references missing file: %s", getId(), file.getPath()));
                 }
-
-                BufferedReader reader = Files.newReader(file, Charsets.UTF_8);
-                sb.append(CharStreams.toString(reader));
-                sb.append("\n");
             }
 
-        	concatenatedStringOfFiles = sb.toString();
+        	concatenatedStringOfFiles = loader.concatenate(getFiles());
     	}
 
     	return concatenatedStringOfFiles;
     }
 
+    /**
+     * Forget the concatenated contents of the files once they have been compiled, keeping the list of files.
+     */
+    public void releaseSource() {
+        concatenatedStringOfFiles = null;
+    }
+
 	public FileSet getFileSet() {
 		return fileSet;
 	}
@@ -166,6 +181,14 @@ public class JoinSet {
 
 	}
 
+    /**
+     * Forget the cached list and contents of the files so changes on disk are picked up.
+     */
+    public void reset() {
+        files = null;
+        concatenatedStringOfFiles = null;
+    }
+
     public List<File> getOrderedFiles() {
         return orderedFiles;
     }
@@ -0,0 +1,59 @@
+package com.theoryinpractise.coffeescript;
+
+import org.apache.maven.model.FileSet;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * A set of JavaScript files to minify into a single file.
+ *
+ */
+public class MinifyBundle {
+
+    private FileSet fileSet;
+
+    private String minifiedFile;
+
+    public MinifyBundle() {
+    }
+
+    public MinifyBundle(FileSet fileSet, String minifiedFile) {
+        this.fileSet = fileSet;
+        this.minifiedFile = minifiedFile;
+    }
+
+    public FileSet getFileSet() {
+        return fileSet;
+    }
+
+    /**
+     * A maven FileSet of the files to minify, in the order they should appear in the minified file.
+     */
+    public void setFileSet(FileSet fileSet) {
+        this.fileSet = fileSet;
+    }
+
+    public String getMinifiedFile() {
+        return minifiedFile;
+    }
+
+    /**
+     * The file the minified JavaScript is written to.
+     */
+    public void setMinifiedFile(String minifiedFile) {
+        this.minifiedFile = minifiedFile;
+    }
+}
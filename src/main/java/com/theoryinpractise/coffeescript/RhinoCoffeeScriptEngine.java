@@ -0,0 +1,197 @@
+package com.theoryinpractise.coffeescript;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.Require;
+import org.mozilla.javascript.commonjs.module.provider.StrongCachingModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Contributing authors:
+ * Daniel Bower
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Runs the coffee-script compiler in Rhino, loading its modules through Rhino's CommonJS require.
+ */
+class RhinoCoffeeScriptEngine implements CoffeeScriptEngine {
+
+
+    private final Scriptable globalScope;
+    private String version;
+    private Scriptable coffeeScript;
+    private Function compileFunction;
+    private File bytecodeCacheDirectory;
+
+    /**
+     * @param bytecodeCacheDirectory where to keep the classes Rhino generates for the coffee-script modules
+     *                               between builds, or null to compile the modules every time
+     */
+    RhinoCoffeeScriptEngine(String version, File bytecodeCacheDirectory) {
+        this.version = version;
+        this.bytecodeCacheDirectory = bytecodeCacheDirectory;
+
+        try {
+            Context context = createContext();
+            ScriptableObject sealedScope = context.initStandardObjects();
+            sealedScope.sealObject();
+            globalScope = sealedScope;
+            final Require require = getSandboxedRequire(context, globalScope, true);
+            coffeeScript = require.requireMain(context, "coffee-script");
+            compileFunction = (Function) ScriptableObject.getProperty(coffeeScript, "compile");
+            disableSourceMapGeneration(context);
+        } catch (Exception e1) {
+            throw new CoffeeScriptException("Unable to load the coffeeScript compiler into Rhino", e1);
+        } finally {
+            Context.exit();
+        }
+
+    }
+
+    @Override
+    public CompileResult compile(String coffeeScriptSource, CompileOptions options) {
+        Context context = Context.enter();
+        try {
+            Scriptable compileScope = context.newObject(coffeeScript);
+            compileScope.setParentScope(coffeeScript);
+            try {
+                Object result = compileFunction.call(context, compileScope, coffeeScript,
+                                                     new Object[] {coffeeScriptSource, toNativeOptions(context, compileScope, options)});
+
+                if (options.getSourceMap() == CoffeeScriptCompiler.SourceMap.NONE) {
+                    return new CompileResult(Context.toString(result));
+                } else {
+                    NativeObject nativeObject = (NativeObject) result;
+                    String js = nativeObject.get("js").toString();
+                    return new CompileResult(js, readSourceMapping((Scriptable) nativeObject.get("sourceMap"), options.getFilename()));
+                }
+
+            } catch (JavaScriptException e) {
+                throw new CoffeeScriptException(e.getMessage(), e);
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Read the mappings recorded by the coffee-script SourceMap object, which holds a sparse array of lines
+     * with a sparse array of column mappings each from 1.6.3, and a dense list of column mappings per line in 1.6.1.
+     */
+    private SourceMapping readSourceMapping(Scriptable sourceMap, String sourceName) {
+        SourceMapping mapping = SourceMapping.forSourceName(sourceName);
+
+        boolean columnMappings = !ScriptableObject.hasProperty(sourceMap, "lines");
+        Scriptable lines = (Scriptable) ScriptableObject.getProperty(sourceMap, columnMappings ? "generatedLines" : "lines");
+        for (Object line : elements(lines)) {
+            Scriptable columns = (Scriptable) ScriptableObject.getProperty((Scriptable) line, columnMappings ? "columnMappings" : "columns");
+            for (Object column : elements(columns)) {
+                Scriptable entry = (Scriptable) column;
+                mapping.add(intProperty(entry, columnMappings ? "generatedLine" : "line"),
+                            intProperty(entry, columnMappings ? "generatedColumn" : "column"),
+                            intProperty(entry, "sourceLine"),
+                            intProperty(entry, "sourceColumn"));
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * The defined elements of a possibly sparse javascript array.
+     */
+    private static List<Object> elements(Scriptable array) {
+        int length = intProperty(array, "length");
+        List<Object> elements = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+            Object element = array.get(i, array);
+            if (element instanceof Scriptable) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    private static int intProperty(Scriptable object, String name) {
+        return ((Number) ScriptableObject.getProperty(object, name)).intValue();
+    }
+
+    /**
+     * The v3 source map is encoded in Java from the raw mappings, so stop coffee-script from building its
+     * own JSON version of the map on every compilation.  From 1.6.3 generation is a method on the SourceMap
+     * prototype, which is found through the map of a trivial compilation.
+     */
+    private void disableSourceMapGeneration(Context context) {
+        Scriptable compileScope = context.newObject(coffeeScript);
+        compileScope.setParentScope(coffeeScript);
+        Object result = compileFunction.call(context, compileScope, coffeeScript,
+                                             new Object[] {"", toNativeOptions(context, compileScope, new CompileOptions("init.coffee", true, CoffeeScriptCompiler.SourceMap.V3, false, false))});
+        Object sourceMap = result instanceof Scriptable ? ScriptableObject.getProperty((Scriptable) result, "sourceMap") : null;
+        if (sourceMap instanceof Scriptable) {
+            Scriptable prototype = ((Scriptable) sourceMap).getPrototype();
+            if (prototype != null && ScriptableObject.getProperty(prototype, "generate") instanceof Function) {
+                ScriptableObject.putProperty(prototype, "generate", new BaseFunction() {
+                    @Override
+                    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                        return null;
+                    }
+                });
+            }
+        }
+    }
+
+    private Scriptable toNativeOptions(Context context, Scriptable scope, CompileOptions options) {
+        Scriptable nativeOptions = context.newObject(scope);
+        ScriptableObject.putProperty(nativeOptions, "bare", options.isBare());
+        ScriptableObject.putProperty(nativeOptions, "sourceMap", options.getSourceMap() != CoffeeScriptCompiler.SourceMap.NONE);
+        ScriptableObject.putProperty(nativeOptions, "literate", options.isLiterate());
+        ScriptableObject.putProperty(nativeOptions, "header", options.isHeader());
+        ScriptableObject.putProperty(nativeOptions, "filename", options.getFilename());
+        return nativeOptions;
+    }
+
+    private Context createContext() {
+        Context context = Context.enter();
+        context.setOptimizationLevel(9); // Enable optimization
+        return context;
+    }
+
+    private Require getSandboxedRequire(Context cx, Scriptable scope, boolean sandboxed) throws URISyntaxException {
+        UrlModuleSourceProvider sourceProvider = new UrlModuleSourceProvider(Collections.singleton(getDirectory()), null);
+        ModuleScriptProvider scriptProvider = bytecodeCacheDirectory != null
+                ? new BytecodeCachingModuleScriptProvider(sourceProvider, new File(bytecodeCacheDirectory, version))
+                : new StrongCachingModuleScriptProvider(sourceProvider);
+        return new Require(cx, scope, scriptProvider, null, null, sandboxed);
+    }
+
+    private URI getDirectory() throws URISyntaxException {
+        final String resourcePath = String.format("/coffee-script-%s/", version);
+        return getClass().getResource(resourcePath).toURI();
+    }
+
+}
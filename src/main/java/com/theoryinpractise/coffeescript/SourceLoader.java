@@ -0,0 +1,137 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Throwables;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Reads and decodes each distinct source file once for a whole compilation, however many JoinSets include it.
+ * <p/>
+ * Files can be preloaded in the background so reading overlaps with compiling, and every JoinSet that needs a
+ * file is handed the same decoded String.
+ */
+public class SourceLoader implements Closeable {
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<Path, CompletableFuture<String>> sources = new ConcurrentHashMap<Path, CompletableFuture<String>>();
+
+    /**
+     * @param threads number of threads used to preload files, with one or less files are read as they are needed
+     */
+    public SourceLoader(int threads) {
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, CoffeeScriptCompilerMojo.daemonThreadFactory("coffee-reader-%d")) : null;
+    }
+
+    /**
+     * Start reading the given files in the background.
+     */
+    public void preload(Collection<File> files) {
+        for (File file : files) {
+            source(file, true);
+        }
+    }
+
+    public String load(File file) throws IOException {
+        try {
+            return source(file, false).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + file);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Join the contents of the files, each followed by a newline, into a buffer sized from the file lengths.
+     */
+    public String concatenate(List<File> files) throws IOException {
+        long length = 0;
+        for (File file : files) {
+            length += file.length() + 1;
+        }
+
+        // UTF-8 never decodes to more chars than bytes, so this is an upper bound
+        StringBuilder sb = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE - 8));
+        for (File file : files) {
+            sb.append(load(file)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Forget the contents of files no longer needed, a later load reads them again.
+     */
+    public void release(Collection<File> files) {
+        for (File file : files) {
+            sources.remove(file.toPath().toAbsolutePath().normalize());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<String> source(File file, boolean background) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        CompletableFuture<String> source = sources.get(path);
+        if (source == null) {
+            CompletableFuture<String> created = new CompletableFuture<String>();
+            source = sources.putIfAbsent(path, created);
+            if (source == null) {
+                source = created;
+                if (background && executor != null) {
+                    executor.execute(() -> read(path, created));
+                } else {
+                    read(path, created);
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Files.readAllBytes sizes its buffer from the file size, so each file is read with a single allocation.
+     */
+    private static void read(Path path, CompletableFuture<String> source) {
+        try {
+            source.complete(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            source.completeExceptionally(e);
+        }
+    }
+
+}
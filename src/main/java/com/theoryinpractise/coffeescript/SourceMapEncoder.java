@@ -0,0 +1,135 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * Encodes {@link SourceMapping}s as version 3 source maps.
+ * <p/>
+ * Segments are written with the same relative Base64 VLQ encoding the coffee-script compiler uses, straight to
+ * the writer, so the mappings string is never built in memory.
+ */
+public class SourceMapEncoder {
+
+    private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final int VLQ_SHIFT = 5;
+    private static final int VLQ_CONTINUATION_BIT = 1 << VLQ_SHIFT;
+    private static final int VLQ_VALUE_MASK = VLQ_CONTINUATION_BIT - 1;
+
+    public static String encode(SourceMapping mapping) {
+        StringWriter writer = new StringWriter(mapping.size() * 8 + 128);
+        try {
+            write(mapping, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    public static void write(SourceMapping mapping, Writer writer) throws IOException {
+        writer.write("{\"version\":3,\"file\":");
+        writeString(writer, mapping.getFile());
+        writer.write(",\"sourceRoot\":\"\",\"sources\":[");
+        writeString(writer, mapping.getSource());
+        writer.write("],\"names\":[],\"mappings\":\"");
+        writeMappings(mapping, writer);
+        writer.write("\"}");
+    }
+
+    /**
+     * Start streaming an index map, followed by its sections in order and then {@link #writeIndexEnd(Writer)}.
+     */
+    public static void writeIndexStart(String file, Writer writer) throws IOException {
+        writer.write("{\"version\":3,\"file\":");
+        writeString(writer, file);
+        writer.write(",\"sections\":[");
+    }
+
+    /**
+     * Write the map of one file of an index map, skipped when the file has no map.
+     *
+     * @return true if a section was written
+     */
+    public static boolean writeIndexSection(int lineOffset, CompileResult section, boolean first, Writer writer) throws IOException {
+        if (!section.hasMap()) {
+            return false;
+        }
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write("{\"offset\":{\"line\":" + lineOffset + ",\"column\":0},\"map\":");
+        section.writeMap(writer);
+        writer.write('}');
+        return true;
+    }
+
+    public static void writeIndexEnd(Writer writer) throws IOException {
+        writer.write("]}");
+    }
+
+    private static void writeMappings(SourceMapping mapping, Writer writer) throws IOException {
+        int writingLine = 0;
+        int lastColumn = 0;
+        int lastSourceLine = 0;
+        int lastSourceColumn = 0;
+        boolean needComma = false;
+
+        for (int i = 0; i < mapping.size(); i++) {
+            while (writingLine < mapping.getGeneratedLine(i)) {
+                lastColumn = 0;
+                needComma = false;
+                writer.write(';');
+                writingLine++;
+            }
+            if (needComma) {
+                writer.write(',');
+            }
+            writeVlq(writer, mapping.getGeneratedColumn(i) - lastColumn);
+            lastColumn = mapping.getGeneratedColumn(i);
+            writeVlq(writer, 0);
+            writeVlq(writer, mapping.getSourceLine(i) - lastSourceLine);
+            lastSourceLine = mapping.getSourceLine(i);
+            writeVlq(writer, mapping.getSourceColumn(i) - lastSourceColumn);
+            lastSourceColumn = mapping.getSourceColumn(i);
+            needComma = true;
+        }
+    }
+
+    static void writeVlq(Writer writer, int value) throws IOException {
+        int valueToEncode = value < 0 ? ((-value) << 1) + 1 : value << 1;
+        do {
+            int chunk = valueToEncode & VLQ_VALUE_MASK;
+            valueToEncode >>>= VLQ_SHIFT;
+            if (valueToEncode != 0) {
+                chunk |= VLQ_CONTINUATION_BIT;
+            }
+            writer.write(BASE64_CHARS[chunk]);
+        } while (valueToEncode != 0);
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        writer.write(JsonStringEncoder.getInstance().quoteAsString(value == null ? "" : value));
+        writer.write('"');
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.theoryinpractise.coffeescript;
+
+import java.util.Arrays;
+
+/**
+ * The raw mappings of a compiled file, as recorded by the coffee-script compiler, in generated order.
+ */
+public class SourceMapping {
+
+    private final String file;
+    private final String source;
+
+    private int[] segments = new int[64];
+    private int size;
+
+    public SourceMapping(String file, String source) {
+        this.file = file;
+        this.source = source;
+    }
+
+    /**
+     * An empty mapping for the given source, named for the .js file it compiles to.
+     */
+    public static SourceMapping forSourceName(String sourceName) {
+        String source = sourceName.substring(sourceName.lastIndexOf('/') + 1);
+        String file = source.replaceFirst("\\.(coffee|litcoffee|coffee\\.md)$", "") + ".js";
+        return new SourceMapping(file, source);
+    }
+
+    public void add(int generatedLine, int generatedColumn, int sourceLine, int sourceColumn) {
+        if (size + 4 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[size++] = generatedLine;
+        segments[size++] = generatedColumn;
+        segments[size++] = sourceLine;
+        segments[size++] = sourceColumn;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size / 4;
+    }
+
+    public int getGeneratedLine(int index) {
+        return segments[index * 4];
+    }
+
+    public int getGeneratedColumn(int index) {
+        return segments[index * 4 + 1];
+    }
+
+    public int getSourceLine(int index) {
+        return segments[index * 4 + 2];
+    }
+
+    public int getSourceColumn(int index) {
+        return segments[index * 4 + 3];
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Copyright 2011 Mark Derricutt.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p/>
+ * <p/>
+ * An output file written a piece at a time, so large outputs never have to be held in memory in full.
+ * <p/>
+ * The contents go to a temporary file next to the output, which {@link #commit()} moves into place unless the
+ * output already has exactly the same contents, the same as {@link FileUtilities#writeIfChanged(File, byte[])}.
+ */
+public class StreamedOutput implements Closeable {
+
+    private final File file;
+    private final File temp;
+    private final CountingOutputStream out;
+    private final Writer writer;
+    private boolean committed;
+
+    public StreamedOutput(File file) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        this.temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        this.out = new CountingOutputStream(new FileOutputStream(temp));
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Bytes written so far, not counting what is still buffered in the writer.
+     */
+    public long getBytes() {
+        return out.getCount();
+    }
+
+    /**
+     * Finish writing and replace the output if its contents changed.
+     *
+     * @return true if the output was written
+     */
+    public boolean commit() throws IOException {
+        writer.close();
+        committed = true;
+        try {
+            if (file.isFile() && file.length() == temp.length()
+                    && com.google.common.io.Files.asByteSource(file).contentEquals(com.google.common.io.Files.asByteSource(temp))) {
+                return false;
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Discard the output unless it was committed.
+     */
+    @Override
+    public void close() {
+        if (!committed) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // The temporary file is deleted regardless
+            }
+            temp.delete();
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BuildManifestTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testUnchangedInputsAreUpToDate() throws Exception {
+        File source = write("a.coffee", "a = 1\n");
+        File output = write("a.js", "var a = 1;\n");
+        List<File> inputs = ImmutableList.of(source);
+
+        BuildManifest manifest = BuildManifest.load(new File(directory, "manifest.json"), "configuration");
+        manifest.update("a", manifest.snapshot(inputs), ImmutableList.of(output));
+        manifest.save();
+
+        BuildManifest loaded = BuildManifest.load(new File(directory, "manifest.json"), "configuration");
+        assertTrue(loaded.isUpToDate("a", inputs, ImmutableList.of(output)));
+        assertFalse(BuildManifest.load(new File(directory, "manifest.json"), "other configuration").isUpToDate("a", inputs, ImmutableList.of(output)));
+    }
+
+    @Test
+    public void testSameSizeEditWithinTheSameTick() throws Exception {
+        File source = write("a.coffee", "a = 1\n");
+        File output = write("a.js", "var a = 1;\n");
+        List<File> inputs = ImmutableList.of(source);
+        long modified = source.lastModified();
+
+        BuildManifest manifest = BuildManifest.load(new File(directory, "manifest.json"), "configuration");
+        manifest.update("a", manifest.snapshot(inputs), ImmutableList.of(output));
+
+        Files.asCharSink(source, Charsets.UTF_8).write("a = 2\n");
+        source.setLastModified(modified);
+        assertFalse(manifest.isUpToDate("a", inputs, ImmutableList.of(output)));
+    }
+
+    @Test
+    public void testEditWhileCompiling() throws Exception {
+        File source = write("a.coffee", "a = 1\n");
+        File output = write("a.js", "var a = 1;\n");
+        List<File> inputs = ImmutableList.of(source);
+
+        BuildManifest manifest = BuildManifest.load(new File(directory, "manifest.json"), "configuration");
+        BuildManifest.Inputs snapshot = manifest.snapshot(inputs);
+        Files.asCharSink(source, Charsets.UTF_8).write("a = 22\n");
+        manifest.update("a", snapshot, ImmutableList.of(output));
+
+        assertFalse(manifest.isUpToDate("a", inputs, ImmutableList.of(output)));
+    }
+
+    private File write(String name, String contents) throws Exception {
+        File file = new File(directory, name);
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.collect.Lists;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BuildReportTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(directory, "report.json");
+
+        BuildReport report = new BuildReport();
+        BuildReport.Unit unit = report.unit("joinset", "main");
+        unit.compileMillis = 12.5;
+        unit.inputBytes = 100;
+        report.save(file);
+
+        BuildReport loaded = BuildReport.load(file);
+        assertEquals(loaded.getUnits().size(), 1);
+        assertEquals(loaded.getUnits().get(0).name, "main");
+        assertEquals(loaded.getUnits().get(0).getTotalMillis(), 12.5);
+        assertEquals(loaded.getUnits().get(0).inputBytes, 100);
+    }
+
+    @Test
+    public void testMissingReport() {
+        assertNull(BuildReport.load(new File(directory, "report.json")));
+    }
+
+    @Test
+    public void testFlagsSlowerUnits() {
+        BuildReport previous = new BuildReport();
+        previous.unit("file", "slower.coffee").compileMillis = 100;
+        previous.unit("file", "same.coffee").compileMillis = 100;
+        previous.unit("file", "noise.coffee").compileMillis = 1;
+
+        BuildReport report = new BuildReport();
+        report.unit("file", "slower.coffee").compileMillis = 200;
+        report.unit("file", "same.coffee").compileMillis = 105;
+        report.unit("file", "noise.coffee").compileMillis = 3;
+        report.unit("file", "new.coffee").compileMillis = 500;
+
+        final List<String> warnings = Lists.newArrayList();
+        report.logSlower(new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+        }, previous);
+
+        assertEquals(warnings.size(), 1);
+        assertTrue(warnings.get(0).startsWith("file slower.coffee got slower"));
+    }
+
+}
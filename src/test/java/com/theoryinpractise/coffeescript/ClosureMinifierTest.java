@@ -0,0 +1,52 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ClosureMinifierTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testFingerprintCoversInputsAndSettings() throws Exception {
+        File a = new File(directory, "a.js");
+        File b = new File(directory, "b.js");
+        Files.asCharSink(a, Charsets.UTF_8).write("var a = 1;");
+        Files.asCharSink(b, Charsets.UTF_8).write("var b = 2;");
+
+        ClosureMinifier minifier = new ClosureMinifier(new SystemStreamLog());
+        String fingerprint = minifier.fingerprint(ImmutableList.of(a, b));
+
+        assertEquals(minifier.fingerprint(ImmutableList.of(a, b)), fingerprint);
+        assertNotEquals(minifier.fingerprint(ImmutableList.of(b, a)), fingerprint);
+        assertNotEquals(new ClosureMinifier("WHITESPACE_ONLY", new SystemStreamLog()).fingerprint(ImmutableList.of(a, b)), fingerprint);
+
+        Files.asCharSink(b, Charsets.UTF_8).write("var b = 3;");
+        assertNotEquals(minifier.fingerprint(ImmutableList.of(a, b)), fingerprint);
+    }
+
+    @Test
+    public void testProjectExterns() throws Exception {
+        File input = new File(directory, "input.js");
+        File externs = new File(directory, "externs.js");
+        File output = new File(directory, "output.min.js");
+        Files.asCharSink(input, Charsets.UTF_8).write("window.onload = function() { thirdParty.initialise(); };");
+        Files.asCharSink(externs, Charsets.UTF_8).write("var thirdParty = {}; thirdParty.initialise = function() {};");
+
+        ClosureMinifier minifier = new ClosureMinifier("ADVANCED_OPTIMIZATIONS", new SystemStreamLog());
+        String fingerprint = minifier.fingerprint(ImmutableList.of(input));
+        minifier.setExterns(ImmutableList.of(externs));
+        assertNotEquals(minifier.fingerprint(ImmutableList.of(input)), fingerprint);
+
+        minifier.compile(ImmutableList.of(input), output.getPath());
+        assertTrue(Files.asCharSource(output, Charsets.UTF_8).read().contains("thirdParty.initialise()"));
+    }
+
+}
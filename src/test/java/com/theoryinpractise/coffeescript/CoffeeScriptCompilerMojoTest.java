@@ -0,0 +1,212 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.theoryinpractise.coffeescript.MojoParameters.set;
+import static com.theoryinpractise.coffeescript.MojoParameters.withDefaults;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class CoffeeScriptCompilerMojoTest extends TemporaryDirectoryFixture {
+
+    private final List<String> messages = new CopyOnWriteArrayList<String>();
+    private final List<String> warnings = new CopyOnWriteArrayList<String>();
+
+    @BeforeMethod
+    public void clearMessages() {
+        messages.clear();
+        warnings.clear();
+    }
+
+    @Test
+    public void testParseThreadCount() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("1"), 1);
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("6"), 6);
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("0"), 1);
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("1C"), cores);
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("2c"), 2 * cores);
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("0.5C"), Math.max(1, cores / 2));
+        assertEquals(CoffeeScriptCompilerMojo.parseThreadCount("0.01C"), 1);
+
+        for (String invalid : new String[]{"", "C", "many", "1.5"}) {
+            try {
+                CoffeeScriptCompilerMojo.parseThreadCount(invalid);
+                fail("Expected " + invalid + " to be rejected");
+            } catch (MojoExecutionException e) {
+                assertTrue(e.getMessage().startsWith("Invalid threads value (" + invalid + ")"), e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testThreadsWriteTheSameOutputsAndLogInJoinSetOrder() throws Exception {
+        File coffeeDir = new File(directory, "src/main/coffee");
+        for (int i = 0; i < 8; i++) {
+            // Later files are larger, so with several threads the first JoinSets finish first less often
+            StringBuilder source = new StringBuilder();
+            for (int j = 0; j <= i * 10; j++) {
+                source.append("module").append(i).append("_").append(j).append(" = (x) -> x * ").append(j).append('\n');
+            }
+            write(new File(coffeeDir, "module" + i + ".coffee"), source.toString());
+        }
+
+        compilerMojo("1").execute();
+        List<String> singleThreaded = compilationMessages();
+        File singleThreadedOutput = new File(directory, "single");
+        FileUtils.rename(new File(directory, "target/coffee"), singleThreadedOutput);
+
+        FileUtils.deleteDirectory(new File(directory, "target"));
+        messages.clear();
+        compilerMojo("4").execute();
+
+        assertEquals(compilationMessages(), singleThreaded);
+        for (int i = 0; i < 8; i++) {
+            for (String output : new String[]{"module" + i + ".js", "module" + i + ".js.map"}) {
+                assertEquals(contents(new File(directory, "target/coffee/" + output)), contents(new File(singleThreadedOutput, output)), output);
+            }
+        }
+    }
+
+    @Test
+    public void testFindsJoinSetsInEveryRoot() throws Exception {
+        File coffeeDir = new File(directory, "src/main/coffee");
+        File refill = new File(directory, "src/refill/coffee");
+        File missing = new File(directory, "src/missing/coffee");
+        File notADirectory = write(new File(directory, "src/notes.txt"), "Not coffee\n");
+        write(new File(coffeeDir, "b.coffee"), "b = 1\n");
+        write(new File(coffeeDir, "nested/c.coffee"), "c = 1\n");
+        write(new File(coffeeDir, "a.coffee"), "a = 1\n");
+        write(new File(coffeeDir, "d.litcoffee"), "    d = 1\n");
+        write(new File(coffeeDir, "e.coffee.md"), "    e = 1\n");
+        write(new File(coffeeDir, "readme.md"), "Not coffee\n");
+        write(new File(refill, "f.coffee"), "f = 1\n");
+        write(new File(refill, "a.litcoffee"), "    a = 1\n");
+
+        CoffeeScriptCompilerMojo mojo = compilerMojo("1");
+        set(mojo, "refills", Arrays.asList(refill, missing, notADirectory));
+
+        // Each root in turn, and within one its .coffee, .litcoffee and .coffee.md files, each sorted by path
+        List<String> expected = Arrays.asList("src/main/coffee/a.coffee", "src/main/coffee/b.coffee", "src/main/coffee/nested/c.coffee",
+                                              "src/main/coffee/d.litcoffee", "src/main/coffee/e.coffee.md",
+                                              "src/refill/coffee/f.coffee", "src/refill/coffee/a.litcoffee");
+        for (int i = 0; i < 3; i++) {
+            List<String> found = Lists.newArrayList();
+            for (JoinSet joinSet : mojo.findJoinSets()) {
+                found.add(directory.toURI().relativize(joinSet.getFiles().get(0).toURI()).getPath());
+            }
+            assertEquals(found, expected);
+        }
+
+        // Roots that cannot be searched are warned about rather than failing the build
+        assertEquals(warnings.size(), 6, warnings.toString());
+        assertTrue(warnings.contains("Unable to search for coffee files in " + missing + ": it is not a directory"), warnings.toString());
+        assertTrue(warnings.contains("Unable to search for coffee files in " + notADirectory + ": it is not a directory"), warnings.toString());
+    }
+
+    @DataProvider
+    public Object[][] threads() {
+        return new Object[][]{{"1"}, {"4"}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testReusesUnchangedFilesOfIndividuallyCompiledJoinSets(String threads) throws Exception {
+        File coffeeDir = new File(directory, "src/main/coffee");
+        File output = new File(directory, "target/coffee");
+        write(new File(coffeeDir, "app/a.coffee"), "square = (x) -> x * x\n");
+        File b = write(new File(coffeeDir, "app/b.coffee"), "cube = (x) -> x * x * x\n");
+        write(new File(coffeeDir, "app/c.coffee"), "double = (x) -> x * 2\n");
+
+        individualJoinSetMojo(coffeeDir, output, threads).execute();
+        write(b, "cube = (cubed) -> cubed * cubed * cubed\n");
+        messages.clear();
+        individualJoinSetMojo(coffeeDir, output, threads).execute();
+
+        assertTrue(messages.contains("Reused 2 unchanged files in JoinSet:app"), messages.toString());
+        assertTrue(messages.contains("Compiling File b.coffee in JoinSet:app"), messages.toString());
+        String js = contents(new File(output, "app.js"));
+        String map = contents(new File(output, "app.js.map"));
+        assertTrue(js.contains("cubed"));
+
+        // A clean build, without any files to reuse, writes the same outputs
+        FileUtils.deleteDirectory(new File(directory, "target"));
+        individualJoinSetMojo(coffeeDir, output, threads).execute();
+        assertEquals(contents(new File(output, "app.js")), js);
+        assertEquals(contents(new File(output, "app.js.map")), map);
+    }
+
+    private CoffeeScriptCompilerMojo individualJoinSetMojo(File coffeeDir, File output, String threads) throws Exception {
+        FileSet files = new FileSet();
+        files.setDirectory(new File(coffeeDir, "app").getPath());
+        files.addInclude("*.coffee");
+
+        JoinSet joinSet = new JoinSet();
+        joinSet.setId("app");
+        joinSet.setFileSet(files);
+        joinSet.setCompileIndividualFiles(true);
+        joinSet.setCoffeeOutputDirectory(output);
+
+        CoffeeScriptCompilerMojo mojo = compilerMojo(threads);
+        set(mojo, "coffeeJoinSets", Collections.singletonList(joinSet));
+        return mojo;
+    }
+
+    private CoffeeScriptCompilerMojo compilerMojo(String threads) throws Exception {
+        CoffeeScriptCompilerMojo mojo = withDefaults(new CoffeeScriptCompilerMojo(), directory);
+        set(mojo, "map", true);
+        set(mojo, "bytecodeCache", false);
+        set(mojo, "buildReport", false);
+        set(mojo, "threads", threads);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                super.info(content);
+                messages.add(content.toString());
+            }
+
+            @Override
+            public void warn(CharSequence content) {
+                super.warn(content);
+                warnings.add(content.toString());
+            }
+        });
+        return mojo;
+    }
+
+    /**
+     * The messages logged for each JoinSet, leaving out the output directory being created by whichever JoinSet
+     * gets there first.
+     */
+    private List<String> compilationMessages() {
+        List<String> compilationMessages = Lists.newArrayList(messages);
+        compilationMessages.removeIf(message -> message.startsWith("Creating output path"));
+        return compilationMessages;
+    }
+
+    private static File write(File file, String contents) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+
+    private static String contents(File file) throws Exception {
+        return Files.asCharSource(file, Charsets.UTF_8).read();
+    }
+
+}
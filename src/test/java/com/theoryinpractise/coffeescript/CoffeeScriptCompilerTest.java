@@ -2,13 +2,24 @@ package com.theoryinpractise.coffeescript;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public class CoffeeScriptCompilerTest {
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class CoffeeScriptCompilerTest extends TemporaryDirectoryFixture {
 
     @DataProvider
     public Iterator<Object[]> provideVersions() {
@@ -33,4 +44,46 @@ public class CoffeeScriptCompilerTest {
         compiler.compile("string   = \"file3\"", "test", true, sourceMap, true, false);
     }
 
+    @Test
+    public void testBytecodeCache() {
+        String source = "square = (x) -> x * x";
+        String expected = new CoffeeScriptCompiler("1.10.0").compile(source, "test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false).getJs();
+
+        for (int i = 0; i < 2; i++) {
+            CoffeeScriptCompiler compiler = new CoffeeScriptCompiler("1.10.0", directory);
+            assertEquals(compiler.compile(source, "test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false).getJs(), expected);
+        }
+        assertTrue(new File(directory, "1.10.0").list().length > 0);
+    }
+
+    @Test
+    public void testSharedPool() throws Exception {
+        CoffeeScriptCompilerPool pool = CoffeeScriptCompilerPool.forVersion("1.10.0", null);
+        assertSame(CoffeeScriptCompilerPool.forVersion("1.10.0", null), pool);
+        assertSame(CoffeeScriptCompilerPool.forVersion("1.10.0", new File("target/rhino")), CoffeeScriptCompilerPool.forVersion("1.10.0", new File("target/rhino").getAbsoluteFile()));
+        assertNotSame(CoffeeScriptCompilerPool.forVersion("1.10.0", new File("target/rhino")), pool);
+
+        String expected = new CoffeeScriptCompiler("1.10.0").compile("square = (x) -> x * x", "test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false).getJs();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CompileResult>> results = Lists.newArrayList();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> pool.compile("square = (x) -> x * x", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false))));
+            }
+            for (Future<CompileResult> result : results) {
+                assertEquals(result.get().getJs(), expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testQuotesInFilename() {
+        CoffeeScriptCompiler compiler = new CoffeeScriptCompiler("1.10.0");
+        CompileResult result = compiler.compile("a = 1", new CompileOptions("it's \"quoted\".coffee", true, CoffeeScriptCompiler.SourceMap.V3, true, false));
+        assertTrue(result.getJs().contains("a = 1"));
+    }
+
 }
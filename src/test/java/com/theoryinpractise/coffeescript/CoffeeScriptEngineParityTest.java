@@ -0,0 +1,91 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
+
+/**
+ * Compares GraalJS with Rhino on every bundled coffee-script version.  Off a GraalVM JDK GraalJS only interprets the
+ * compilers, which is slow, so this only runs in the graaljs profile: mvn test -Pgraaljs
+ */
+@Test(groups = "graaljs")
+public class CoffeeScriptEngineParityTest {
+
+    private static final String SOURCE = "# A little of everything the parser has to handle\n"
+            + "class Animal\n"
+            + "  constructor: (@name, rest...) ->\n"
+            + "    @legs = rest.length\n"
+            + "  move: (meters = 5) ->\n"
+            + "    \"#{@name} moved #{meters}m\"\n"
+            + "\n"
+            + "class Snake extends Animal\n"
+            + "  move: ->\n"
+            + "    super 10\n"
+            + "\n"
+            + "squares = (x * x for x in [1..10] when x % 2 is 0)\n"
+            + "lookup = {one: 1, two: 2}\n"
+            + "keys = (key for own key, value of lookup)\n"
+            + "ok = if squares.length > 2 then 'yes' else 'no'\n"
+            + "pattern = /// ^ [a-z]+ $ ///\n"
+            + "alert? new Snake('Sammy').move() unless ok is 'no'\n";
+
+    private static final String LITERATE_SOURCE = "Literate sources only compile the indented code.\n"
+            + "\n"
+            + "    cube = (x) -> x * x * x\n"
+            + "\n"
+            + "And ignore the rest.\n"
+            + "\n"
+            + "    alert cube 3\n";
+
+    @DataProvider
+    public Iterator<Object[]> provideVersions() {
+        final CoffeeScriptCompilerMojo mojo = new CoffeeScriptCompilerMojo();
+        return Iterators.transform(mojo.acceptableVersions.iterator(), new Function<String, Object[]>() {
+            public Object[] apply(@Nullable String s) {
+                return new Object[] {s, mojo.sourceMapVersions.contains(s)};
+            }
+        });
+    }
+
+    @Test(dataProvider = "provideVersions")
+    public void testOutputsMatchRhino(String version, boolean sourceMaps) {
+        CoffeeScriptCompiler rhino = new CoffeeScriptCompiler(version, CoffeeScriptCompiler.Engine.RHINO, null);
+        CoffeeScriptCompiler graalJs = new CoffeeScriptCompiler(version, CoffeeScriptCompiler.Engine.GRAALJS, null);
+
+        assertSameOutput(rhino, graalJs, SOURCE, new CompileOptions("animals.coffee", false, CoffeeScriptCompiler.SourceMap.NONE, true, false));
+        assertSameOutput(rhino, graalJs, SOURCE, new CompileOptions("animals.coffee", true, CoffeeScriptCompiler.SourceMap.NONE, false, false));
+        if (!version.startsWith("1.2.") && !version.startsWith("1.3.") && !version.startsWith("1.4.")) {
+            assertSameOutput(rhino, graalJs, LITERATE_SOURCE, new CompileOptions("cube.litcoffee", false, CoffeeScriptCompiler.SourceMap.NONE, true, true));
+        }
+        if (sourceMaps) {
+            assertSameOutput(rhino, graalJs, SOURCE, new CompileOptions("animals.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+        }
+    }
+
+    @Test
+    public void testCompilationErrors() {
+        CoffeeScriptCompiler graalJs = new CoffeeScriptCompiler("1.10.0", CoffeeScriptCompiler.Engine.GRAALJS, null);
+        try {
+            graalJs.compile("a = (", new CompileOptions("broken.coffee", false, CoffeeScriptCompiler.SourceMap.NONE, true, false));
+            fail("Expected a compilation error");
+        } catch (CoffeeScriptException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    private static void assertSameOutput(CoffeeScriptCompiler expected, CoffeeScriptCompiler actual, String source, CompileOptions options) {
+        CompileResult expectedResult = expected.compile(source, options);
+        CompileResult actualResult = actual.compile(source, options);
+        assertEquals(actualResult.getJs(), expectedResult.getJs());
+        assertEquals(actualResult.getMap(), expectedResult.getMap());
+    }
+
+}
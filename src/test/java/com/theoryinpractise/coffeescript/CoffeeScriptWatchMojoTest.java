@@ -0,0 +1,156 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.theoryinpractise.coffeescript.MojoParameters.set;
+import static com.theoryinpractise.coffeescript.MojoParameters.withDefaults;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class CoffeeScriptWatchMojoTest extends TemporaryDirectoryFixture {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @Test
+    public void testRecompilesEditsAndRemovesOutputsOfDeletedFiles() throws Exception {
+        File coffeeDir = new File(directory, "src/main/coffee");
+        File output = new File(directory, "target/coffee");
+        File cube = write(new File(coffeeDir, "cube.coffee"), "cube = (x) -> x * x * x\n");
+        write(new File(coffeeDir, "square.coffee"), "square = (x) -> x * x\n");
+
+        final CountDownLatch watching = new CountDownLatch(1);
+        CoffeeScriptWatchMojo mojo = watchMojo(coffeeDir, output);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                super.info(content);
+                if (content.toString().startsWith("Watching")) {
+                    watching.countDown();
+                }
+            }
+        });
+
+        Thread watcher = new Thread(() -> {
+            try {
+                mojo.execute();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "coffee-watch-test");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try {
+            assertTrue(watching.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "The watch goal did not start watching");
+            final File cubeJs = new File(output, "cube.js");
+            final File cubeMap = new File(output, "cube.js.map");
+            assertTrue(cubeJs.isFile());
+            assertTrue(cubeMap.isFile());
+            assertFalse(contents(cubeJs).contains("cubed"));
+
+            write(cube, "cube = (cubed) -> cubed * cubed * cubed\n");
+            await(() -> contents(cubeJs).contains("cubed"), "The edited file was not recompiled");
+
+            assertTrue(cube.delete());
+            await(() -> !cubeJs.exists() && !cubeMap.exists(), "The outputs of the deleted file were not removed");
+            assertTrue(new File(output, "square.js").isFile());
+        } finally {
+            watcher.interrupt();
+            watcher.join(TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void testKeepsWatchingWhenTheFirstBuildFails() throws Exception {
+        File coffeeDir = new File(directory, "src/main/coffee");
+        File output = new File(directory, "target/coffee");
+        File broken = write(new File(coffeeDir, "broken.coffee"), "broken = (x) -> [x\n");
+
+        final CountDownLatch watching = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        CoffeeScriptWatchMojo mojo = watchMojo(coffeeDir, output);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                super.info(content);
+                if (content.toString().startsWith("Watching")) {
+                    watching.countDown();
+                }
+            }
+
+            @Override
+            public void error(CharSequence content) {
+                super.error(content);
+                failed.countDown();
+            }
+        });
+
+        Thread watcher = new Thread(() -> {
+            try {
+                mojo.execute();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "coffee-watch-test");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try {
+            assertTrue(watching.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "The watch goal did not start watching");
+            assertTrue(failed.await(0, TimeUnit.MILLISECONDS), "The failed build was not logged");
+            final File brokenJs = new File(output, "broken.js");
+            assertFalse(brokenJs.exists());
+
+            write(broken, "broken = (x) -> [x]\n");
+            await(brokenJs::isFile, "The fixed file was not compiled");
+        } finally {
+            watcher.interrupt();
+            watcher.join(TIMEOUT_MILLIS);
+        }
+    }
+
+    private CoffeeScriptWatchMojo watchMojo(File coffeeDir, File output) throws Exception {
+        CoffeeScriptWatchMojo mojo = withDefaults(new CoffeeScriptWatchMojo(), directory);
+        set(mojo, "coffeeDir", coffeeDir);
+        set(mojo, "coffeeOutputDirectory", output);
+        set(mojo, "map", true);
+        set(mojo, "bytecodeCache", false);
+        set(mojo, "buildReport", false);
+        set(mojo, "watchDebounce", 50);
+        return mojo;
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static File write(File file, String contents) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+
+    private static String contents(File file) {
+        try {
+            return file.isFile() ? Files.asCharSource(file, Charsets.UTF_8).read() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.theoryinpractise.coffeescript;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+public class CompileCacheTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testHitsAndMisses() {
+        CompileCache cache = new CompileCache(directory, 1024 * 1024);
+        String key = CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.V3, true, false));
+
+        assertNull(cache.get(key));
+        cache.put(key, new CompileResult("var a = 1;", "{}"));
+
+        CompileResult result = cache.get(key);
+        assertEquals(result.getJs(), "var a = 1;");
+        assertEquals(result.getMap(), "{}");
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    public void testKeyCoversOptions() {
+        String key = CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false));
+
+        assertNotEquals(CompileCache.key("1.9.3", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 2", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, true, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 1", new CompileOptions("other", true, CoffeeScriptCompiler.SourceMap.NONE, true, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", false, CoffeeScriptCompiler.SourceMap.NONE, true, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.V3, true, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, false, false)), key);
+        assertNotEquals(CompileCache.key("1.10.0", "a = 1", new CompileOptions("test", true, CoffeeScriptCompiler.SourceMap.NONE, true, true)), key);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        CompileCache cache = new CompileCache(directory, 200);
+
+        cache.put("old", new CompileResult(new String(new char[100])));
+        new File(directory, "old.entry").setLastModified(System.currentTimeMillis() - 60000);
+        cache.put("new", new CompileResult(new String(new char[100])));
+
+        cache.evict();
+
+        assertNull(cache.get("old"));
+        assertEquals(cache.get("new").getJs().length(), 100);
+    }
+
+}
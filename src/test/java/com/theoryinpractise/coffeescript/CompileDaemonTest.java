@@ -0,0 +1,121 @@
+package com.theoryinpractise.coffeescript;
+
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+public class CompileDaemonTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testCompileStatusAndStop() throws Exception {
+        CompileDaemon daemon = new CompileDaemon(directory, TimeUnit.MINUTES.toMillis(5), null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> running = executor.submit(() -> {
+                daemon.run();
+                return null;
+            });
+            CompileDaemonClient client = awaitDaemon(directory);
+
+            CompileOptions options = new CompileOptions("square.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false);
+            CompileResult expected = new CoffeeScriptCompiler("1.10.0").compile("square = (x) -> x * x", options);
+            CompileResult result = client.compile("1.10.0", CoffeeScriptCompiler.Engine.RHINO, "square = (x) -> x * x", options);
+            assertEquals(result.getJs(), expected.getJs());
+            assertEquals(result.getMap(), expected.getMap());
+
+            try {
+                client.compile("1.10.0", CoffeeScriptCompiler.Engine.RHINO, "a = (", options);
+                fail("Expected a compilation error");
+            } catch (CoffeeScriptException e) {
+                assertNotNull(e.getMessage());
+            }
+
+            CompileDaemon.Status status = client.status();
+            assertEquals(status.compilations, 1);
+            assertEquals(status.compilers.get(0), "1.10.0 on RHINO");
+
+            client.stop();
+            client.close();
+            running.get(10, TimeUnit.SECONDS);
+            assertFalse(CompileDaemon.getStateFile(directory).exists());
+            assertNull(CompileDaemonClient.connect(directory));
+        } finally {
+            daemon.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        CompileDaemon daemon = new CompileDaemon(directory, 100, null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> running = executor.submit(() -> {
+                daemon.run();
+                return null;
+            });
+            awaitDaemon(directory).close();
+            running.get(10, TimeUnit.SECONDS);
+            assertFalse(CompileDaemon.getStateFile(directory).exists());
+        } finally {
+            daemon.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClosesConnectionsWithoutTheToken() throws Exception {
+        CompileDaemon daemon = new CompileDaemon(directory, TimeUnit.MINUTES.toMillis(5), null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                daemon.run();
+                return null;
+            });
+            CompileDaemonClient client = awaitDaemon(directory);
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), client.getPort())) {
+                socket.setSoTimeout(10000);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                CompileDaemon.authenticate(out, UUID.randomUUID().toString());
+                // A request the daemon must never start reading
+                out.writeInt(Integer.MAX_VALUE);
+                out.flush();
+                assertEquals(socket.getInputStream().read(), -1);
+            }
+
+            // The daemon keeps serving clients that have the token
+            assertEquals(client.status().compilations, 0);
+            client.close();
+        } finally {
+            daemon.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompileDaemonClient awaitDaemon(File directory) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            CompileDaemonClient client = CompileDaemonClient.connect(directory);
+            if (client != null) {
+                return client;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("The compile daemon did not start");
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class DependencyGraphTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testSortsRequiredFilesFirst() throws Exception {
+        File usage = write(directory, "usage.coffee", "#= require animals\nsam = new Snake 'Sam'\n");
+        File animals = write(directory, "animals.coffee", "# Snakes\n#= require models/base\n\nclass Snake extends Animal\n");
+        File base = write(directory, "models/base.coffee", "class Animal\n");
+        File other = write(directory, "other.coffee", "alert 'other'\n#= require usage\n");
+
+        List<File> sorted = new DependencyGraph().sort("main", Arrays.asList(usage, other, animals, base), new SystemStreamLog());
+        assertEquals(sorted, Arrays.asList(base, animals, usage, other));
+    }
+
+    @Test
+    public void testFailsOnCycles() throws Exception {
+        File a = write(directory, "a.coffee", "#= require b\n");
+        File b = write(directory, "b.coffee", "#= require c.coffee\n");
+        File c = write(directory, "c.coffee", "#= require a\n");
+
+        try {
+            new DependencyGraph().sort("main", Arrays.asList(a, b, c), new SystemStreamLog());
+            fail("Expected a circular require");
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Circular require in JoinSet main: a.coffee -> b.coffee -> c.coffee -> a.coffee");
+        }
+    }
+
+    @Test
+    public void testWarnsAboutRequiresOutsideTheJoinSet() throws Exception {
+        // Sprockets style requires of vendor libraries that are not part of the JoinSet
+        File app = write(directory, "app.coffee", "#= require jquery\n#= require models\n\n$ -> new Model\n");
+        File models = write(directory, "models.coffee", "#= require vendor/underscore.js\n\nclass Model\n");
+        File other = write(directory, "other.coffee", "#= require jquery\n\n$ -> alert 'other'\n");
+
+        final List<String> warnings = new ArrayList<String>();
+        List<File> sorted = new DependencyGraph().sort("main", Arrays.asList(other, app, models), new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+        });
+
+        assertEquals(sorted, Arrays.asList(other, models, app));
+        assertEquals(warnings.size(), 3);
+        assertTrue(warnings.get(0).endsWith("requires jquery, which is not part of the JoinSet, the require is ignored"), warnings.get(0));
+    }
+
+    @Test
+    public void testKeepsDirectivesBetweenBuilds() throws Exception {
+        File state = new File(directory, "state/requires.json");
+        File a = write(directory, "a.coffee", "#= require b\n");
+
+        DependencyGraph graph = DependencyGraph.load(state);
+        assertEquals(graph.getRequires(a), Arrays.asList("b"));
+        graph.save();
+        assertTrue(state.isFile());
+
+        // Directives are read again once the file changes
+        write(directory, "a.coffee", "#= require c\n#= require d\n");
+        assertTrue(a.setLastModified(a.lastModified() + 2000));
+        assertEquals(DependencyGraph.load(state).getRequires(a), Arrays.asList("c", "d"));
+    }
+
+    private static File write(File directory, String name, String contents) throws IOException {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+
+}
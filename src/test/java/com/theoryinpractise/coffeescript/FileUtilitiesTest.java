@@ -0,0 +1,33 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class FileUtilitiesTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testWriteIfChanged() throws Exception {
+        File file = new File(directory, "out/test.js");
+        assertTrue(FileUtilities.writeIfChanged(file, "var a = 1;".getBytes(Charsets.UTF_8)));
+
+        assertTrue(file.setLastModified(1000000000000L));
+        assertFalse(FileUtilities.writeIfChanged(file, "var a = 1;".getBytes(Charsets.UTF_8)));
+        assertEquals(file.lastModified(), 1000000000000L);
+
+        // Same size, different contents
+        assertTrue(FileUtilities.writeIfChanged(file, "var a = 2;".getBytes(Charsets.UTF_8)));
+        assertEquals(Files.asCharSource(file, Charsets.UTF_8).read(), "var a = 2;");
+
+        assertTrue(FileUtilities.writeIfChanged(file, "var a = 10;".getBytes(Charsets.UTF_8)));
+        assertEquals(Files.asCharSource(file, Charsets.UTF_8).read(), "var a = 10;");
+        assertEquals(file.getParentFile().list().length, 1);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class GzipCompressorTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testCompressesChangedOutputsOnly() throws Exception {
+        File output = new File(directory, "main.js");
+        String js = "(function() {\n  alert('Hello');\n}).call(this);\n";
+        Files.asCharSink(output, Charsets.UTF_8).write(js);
+
+        File compressed = GzipCompressor.getCompressedFile(output);
+        assertEquals(compressed.getName(), "main.js.gz");
+
+        try (GzipCompressor compressor = new GzipCompressor(2)) {
+            compressor.compress(output, true);
+            assertEquals(compressor.await(new SystemStreamLog()), 1);
+            try (InputStream in = new GZIPInputStream(new FileInputStream(compressed))) {
+                assertEquals(new String(ByteStreams.toByteArray(in), Charsets.UTF_8), js);
+            }
+
+            // An unchanged output keeps its compressed copy
+            compressor.compress(output, false);
+            assertEquals(compressor.await(new SystemStreamLog()), 0);
+
+            // A missing compressed copy is written even when the output is unchanged
+            assertTrue(compressed.delete());
+            compressor.compress(output, false);
+            assertEquals(compressor.await(new SystemStreamLog()), 1);
+            assertTrue(compressed.isFile());
+        }
+    }
+
+}
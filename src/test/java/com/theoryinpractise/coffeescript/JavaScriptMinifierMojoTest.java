@@ -0,0 +1,136 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.theoryinpractise.coffeescript.MojoParameters.set;
+import static com.theoryinpractise.coffeescript.MojoParameters.withDefaults;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class JavaScriptMinifierMojoTest extends TemporaryDirectoryFixture {
+
+    private final List<String> messages = new CopyOnWriteArrayList<String>();
+
+    @BeforeMethod
+    public void clearMessages() {
+        messages.clear();
+    }
+
+    @Test
+    public void testBundlesReportFailuresAgainstTheirOwnOutput() throws Exception {
+        write("good/a.js", "var square = function(x) { return x * x; };\n");
+        write("good/b.js", "var cube = function(x) { return x * x * x; };\n");
+        write("bad/c.js", "var broken = function(x) { return x * ; };\n");
+        File good = new File(directory, "target/good.min.js");
+        File bad = new File(directory, "target/bad.min.js");
+
+        JavaScriptMinifierMojo mojo = minifierMojo();
+        set(mojo, "minifyBundles", Arrays.asList(bundle("good", good), bundle("bad", bad)));
+        set(mojo, "threads", "2");
+
+        try {
+            mojo.execute();
+            fail("Expected the bad bundle to fail");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage().startsWith("Unable to minify " + bad.getPath()), e.getMessage());
+        }
+
+        // The good bundle was minified alongside the failing one, and its messages came out first and together
+        assertTrue(good.isFile());
+        assertTrue(contents(good).contains("square"));
+        assertTrue(messages.indexOf("Minified 2 files into " + good.getPath()) < messages.indexOf("Minifying all Javascript Files into " + bad.getPath()), messages.toString());
+    }
+
+    @Test
+    public void testMinifiesEachFileNextToItself() throws Exception {
+        File square = write("js/square.js", "var square = function(x) { return x * x; };\n");
+        File cube = write("js/nested/cube.js", "var cube = function(x) { return x * x * x; };\n");
+        File vendor = write("js/vendor.min.js", "var vendor=1;\n");
+
+        eachFileMojo().execute();
+
+        assertEquals(JavaScriptMinifierMojo.getMinifiedFile(square), new File(directory, "js/square.min.js"));
+        assertTrue(contents(new File(directory, "js/square.min.js")).contains("square"));
+        assertTrue(contents(new File(directory, "js/nested/cube.min.js")).contains("cube"));
+        // Files already minified are left alone
+        assertFalse(new File(directory, "js/vendor.min.min.js").exists());
+        assertEquals(contents(vendor), "var vendor=1;\n");
+    }
+
+    @Test
+    public void testMinifiesOnlyChangedFilesAgain() throws Exception {
+        write("js/square.js", "var square = function(x) { return x * x; };\n");
+        File cube = write("js/cube.js", "var cube = function(x) { return x * x * x; };\n");
+        eachFileMojo().execute();
+        String minifiedSquare = contents(new File(directory, "js/square.min.js"));
+
+        messages.clear();
+        eachFileMojo().execute();
+        assertTrue(messages.contains("Skipped 2 up to date minified files"), messages.toString());
+
+        write("js/cube.js", "var cube = function(cubed) { return cubed * cubed * cubed + 1; };\n");
+        messages.clear();
+        eachFileMojo().execute();
+        assertTrue(messages.contains("Minified cube.js into " + JavaScriptMinifierMojo.getMinifiedFile(cube).getPath()), messages.toString());
+        assertTrue(messages.contains("Skipped 1 up to date minified files"), messages.toString());
+        assertTrue(contents(new File(directory, "js/cube.min.js")).contains("+1"));
+        assertEquals(contents(new File(directory, "js/square.min.js")), minifiedSquare);
+    }
+
+    private JavaScriptMinifierMojo eachFileMojo() throws Exception {
+        FileSet files = new FileSet();
+        files.setDirectory(new File(directory, "js").getPath());
+        files.addInclude("**/*.js");
+
+        JavaScriptMinifierMojo mojo = minifierMojo();
+        set(mojo, "setOfFilesToMinify", files);
+        set(mojo, "minifyEachFile", true);
+        set(mojo, "threads", "2");
+        return mojo;
+    }
+
+    private JavaScriptMinifierMojo minifierMojo() throws Exception {
+        JavaScriptMinifierMojo mojo = withDefaults(new JavaScriptMinifierMojo(), directory);
+        set(mojo, "buildReport", false);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                super.info(content);
+                messages.add(content.toString());
+            }
+        });
+        return mojo;
+    }
+
+    private MinifyBundle bundle(String name, File minifiedFile) {
+        FileSet files = new FileSet();
+        files.setDirectory(new File(directory, name).getPath());
+        files.addInclude("*.js");
+        return new MinifyBundle(files, minifiedFile.getPath());
+    }
+
+    private File write(String name, String contents) throws Exception {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, Charsets.UTF_8).write(contents);
+        return file;
+    }
+
+    private static String contents(File file) throws Exception {
+        return Files.asCharSource(file, Charsets.UTF_8).read();
+    }
+
+}
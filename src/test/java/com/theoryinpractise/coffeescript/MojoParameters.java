@@ -0,0 +1,132 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Configures a mojo the way Maven would for a project in a given directory.
+ * <p/>
+ * Every parameter gets the default value from the generated plugin descriptor, so tests only set the parameters
+ * they care about and pick up new ones without being edited.  ${basedir} and ${project.build.directory} resolve
+ * into the project, and ${user.home} into a home directory inside it, so no test writes to the real home directory.
+ */
+public final class MojoParameters {
+
+    private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private MojoParameters() {
+    }
+
+    /**
+     * Set every parameter of the mojo that has a default value, resolved against the given project directory.
+     */
+    public static <T> T withDefaults(T mojo, File basedir) throws Exception {
+        Map<String, String> properties = ImmutableMap.<String, String>builder()
+                .put("basedir", basedir.getPath())
+                .put("project.build.directory", new File(basedir, "target").getPath())
+                .put("user.home", new File(basedir, "home").getPath())
+                .put("project.artifactId", "project")
+                .put("project.version", "1.0")
+                .build();
+
+        for (Element parameter : configuration(mojo.getClass())) {
+            String defaultValue = parameter.getAttribute("default-value");
+            if (defaultValue.isEmpty()) {
+                continue;
+            }
+            String value = interpolate(defaultValue, properties);
+            if (value != null) {
+                set(mojo, parameter.getTagName(), value);
+            }
+        }
+        return mojo;
+    }
+
+    /**
+     * Set a mojo parameter the way Maven injects it, including those declared by a superclass.  String values are
+     * converted to the type of the parameter.
+     */
+    public static void set(Object mojo, String name, Object value) throws Exception {
+        for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(mojo, value instanceof String ? convert((String) value, field.getType()) : value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // Declared further up
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static List<Element> configuration(Class<?> mojoClass) throws Exception {
+        File descriptor = new File(new File(MojoParameters.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParentFile(),
+                                   "classes/META-INF/maven/plugin.xml");
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(descriptor);
+
+        NodeList mojos = document.getElementsByTagName("mojo");
+        for (int i = 0; i < mojos.getLength(); i++) {
+            Element mojo = (Element) mojos.item(i);
+            if (mojoClass.getName().equals(text(mojo, "implementation"))) {
+                Element configuration = (Element) mojo.getElementsByTagName("configuration").item(0);
+                List<Element> parameters = Lists.newArrayList();
+                for (Node node = configuration.getFirstChild(); node != null; node = node.getNextSibling()) {
+                    if (node instanceof Element) {
+                        parameters.add((Element) node);
+                    }
+                }
+                return parameters;
+            }
+        }
+        throw new IllegalArgumentException("No mojo " + mojoClass.getName() + " in " + descriptor);
+    }
+
+    private static String text(Element element, String child) {
+        NodeList nodes = element.getElementsByTagName(child);
+        return nodes.getLength() > 0 ? nodes.item(0).getTextContent() : null;
+    }
+
+    /**
+     * Resolve the expressions in a default value, or null when one of them is only known inside a Maven build.
+     */
+    private static String interpolate(String value, Map<String, String> properties) {
+        StringBuffer resolved = new StringBuffer();
+        Matcher matcher = EXPRESSION.matcher(value);
+        while (matcher.find()) {
+            String property = properties.get(matcher.group(1));
+            if (property == null) {
+                return null;
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(property));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    private static Object convert(String value, Class<?> type) {
+        if (type == Boolean.class || type == boolean.class) {
+            return Boolean.valueOf(value);
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(value);
+        }
+        if (type == File.class) {
+            return new File(value);
+        }
+        return value;
+    }
+
+}
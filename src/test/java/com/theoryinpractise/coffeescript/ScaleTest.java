@@ -0,0 +1,289 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.testng.Reporter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.theoryinpractise.coffeescript.MojoParameters.set;
+import static com.theoryinpractise.coffeescript.MojoParameters.withDefaults;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the coffee and minify goals against a generated project of thousands of files in deep directories and
+ * fails when a goal goes over its wall time, peak heap or allocation budget.
+ * <p/>
+ * Only run by the scale profile: mvn test -Pscale.  The corpus size and budgets are system properties, set in the
+ * profile, so a regression shows up as a failed budget rather than a slower build nobody notices.  Goals run on one
+ * thread, and the bytes allocated count every thread, including the file reading, gzip and compile pools a goal has
+ * already shut down.
+ * <p/>
+ * The Rhino bytecode cache is kept in the generated project, so every run starts cold: the first coffee goal pays
+ * for loading the compiler and generating its classes, and the second reuses the compiler already loaded.
+ */
+@Test(groups = "scale")
+public class ScaleTest {
+
+    private static final int FILES = Integer.getInteger("scale.files", 2000);
+
+    /**
+     * Files concatenated into the joined JoinSet.  Rhino compiles a single source in time that grows faster than
+     * its length, around 90 seconds for the 8000 lines of 100 files, so this JoinSet is kept smaller than the rest.
+     */
+    private static final int JOINED_FILES = Integer.getInteger("scale.joinedFiles", 60);
+    private static final long SEED = Long.getLong("scale.seed", 42);
+
+    private File project;
+    private File coffeeDir;
+    private File bytecodeCacheDirectory;
+
+    @BeforeClass(groups = "scale")
+    public void generateCorpus() throws IOException {
+        project = new File("target/scale").getAbsoluteFile();
+        FileUtils.deleteDirectory(project);
+        coffeeDir = new File(project, "src/main/coffee");
+        bytecodeCacheDirectory = new File(project, "rhino");
+
+        Random random = new Random(SEED);
+        List<String> joined = Lists.newArrayList();
+        for (int i = 0; i < FILES; i++) {
+            // The first files go into the joined JoinSet, the rest into one large individually compiled JoinSet
+            boolean inJoined = i < JOINED_FILES;
+            boolean literate = !inJoined && i % 5 == 1;
+            String path = (inJoined ? "joined" : "individual") + "/" + randomDirectories(random) + "module" + i;
+
+            List<String> requires = Lists.newArrayList();
+            String base = null;
+            if (inJoined && !joined.isEmpty()) {
+                // Require earlier files, listed out of order by the fileset, so the JoinSet has to be sorted
+                base = joined.get(random.nextInt(joined.size()));
+                requires.add(base);
+            }
+
+            String source = module("Module" + i, base != null ? "Module" + base.substring(base.lastIndexOf("module") + 6) : null, 3 + random.nextInt(10), random);
+            File file = new File(coffeeDir, path + (literate ? ".litcoffee" : ".coffee"));
+            file.getParentFile().mkdirs();
+            Files.asCharSink(file, Charsets.UTF_8).write(literate ? literate(source) : directives(requires) + source);
+            if (inJoined) {
+                joined.add(path);
+            }
+        }
+    }
+
+    @Test
+    public void testCompileEachFile() throws Exception {
+        CoffeeScriptCompilerMojo mojo = compilerMojo(new File(project, "target/each"));
+        Budget budget = Budget.measure(mojo::execute);
+        assertEquals(FileUtils.getFiles(new File(project, "target/each"), "**/*.js", null).size(), FILES);
+        budget.check("coffee (each file)", "coffee");
+    }
+
+    @Test(dependsOnMethods = "testCompileEachFile")
+    public void testCompileJoinSets() throws Exception {
+        File output = new File(project, "target/joinsets");
+        CoffeeScriptCompilerMojo mojo = compilerMojo(output);
+        set(mojo, "map", true);
+        set(mojo, "coffeeJoinSets", Arrays.asList(joinSet("joined", "joined", false, output), joinSet("individual", "individual", true, output)));
+
+        Budget budget = Budget.measure(mojo::execute);
+        assertTrue(new File(output, "joined.js").isFile());
+        assertTrue(new File(output, "individual.js.map").isFile());
+        budget.check("coffee (JoinSets)", "coffee");
+    }
+
+    @Test(dependsOnMethods = "testCompileJoinSets")
+    public void testMinify() throws Exception {
+        File output = new File(project, "target/joinsets");
+        FileSet files = new FileSet();
+        files.setDirectory(output.getPath());
+        files.addInclude("joined.js");
+        files.addInclude("individual.js");
+
+        JavaScriptMinifierMojo mojo = withDefaults(new JavaScriptMinifierMojo(), project);
+        quiet(mojo);
+        set(mojo, "minifiedFile", new File(output, "scale.min.js").getPath());
+        set(mojo, "setOfFilesToMinify", files);
+        set(mojo, "incremental", false);
+        set(mojo, "buildReport", false);
+
+        Budget budget = Budget.measure(mojo::execute);
+        assertTrue(new File(output, "scale.min.js").isFile());
+        budget.check("minify", "minify");
+    }
+
+    private CoffeeScriptCompilerMojo compilerMojo(File output) throws Exception {
+        CoffeeScriptCompilerMojo mojo = withDefaults(new CoffeeScriptCompilerMojo(), project);
+        quiet(mojo);
+        set(mojo, "coffeeOutputDirectory", output);
+        set(mojo, "preserveSubDirectory", true);
+        set(mojo, "bytecodeCacheDirectory", bytecodeCacheDirectory);
+        set(mojo, "incremental", false);
+        set(mojo, "buildStateDirectory", new File(output.getParentFile(), "coffee-maven-plugin-" + output.getName()));
+        set(mojo, "buildReport", false);
+        return mojo;
+    }
+
+    private JoinSet joinSet(String id, String directory, boolean individual, File output) {
+        FileSet files = new FileSet();
+        files.setDirectory(new File(coffeeDir, directory).getPath());
+        files.addInclude(individual ? "**/*.*coffee" : "**/*.coffee");
+
+        JoinSet joinSet = new JoinSet();
+        joinSet.setId(id);
+        joinSet.setFileSet(files);
+        joinSet.setCompileIndividualFiles(individual);
+        joinSet.setCoffeeOutputDirectory(output);
+        return joinSet;
+    }
+
+    /**
+     * Thousands of files would otherwise log thousands of lines, only warnings and errors are kept.
+     */
+    private static void quiet(AbstractMojo mojo) {
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public boolean isInfoEnabled() {
+                return false;
+            }
+
+            @Override
+            public void info(CharSequence content) {
+            }
+        });
+    }
+
+    private static String randomDirectories(Random random) {
+        StringBuilder directories = new StringBuilder();
+        int depth = 1 + random.nextInt(8);
+        for (int i = 0; i < depth; i++) {
+            directories.append("package").append(random.nextInt(4)).append('/');
+        }
+        return directories.toString();
+    }
+
+    private static String directives(List<String> requires) {
+        StringBuilder directives = new StringBuilder();
+        for (String require : requires) {
+            directives.append("#= require ").append(require).append('\n');
+        }
+        return directives.length() > 0 ? directives.append('\n').toString() : "";
+    }
+
+    private static String module(String name, String base, int methods, Random random) {
+        StringBuilder source = new StringBuilder();
+        source.append("# Generated module ").append(name).append("\n");
+        source.append("class ").append(name).append(base != null ? " extends " + base : "").append("\n");
+        source.append("  constructor: (@name, @size = ").append(random.nextInt(100)).append(") ->\n");
+        source.append("    @items = (i * 3 for i in [0...@size] when i % 3 isnt 0)\n\n");
+        for (int i = 0; i < methods; i++) {
+            source.append("  method").append(i).append(": (values...) ->\n");
+            source.append("    total = 0\n");
+            source.append("    for value, index in values\n");
+            source.append("      switch\n");
+            source.append("        when value > ").append(random.nextInt(1000)).append(" then total += value - index\n");
+            source.append("        when value < 0 then total -= value\n");
+            source.append("        else total += value * 2\n");
+            source.append("    \"#{@name} method").append(i).append(" gave #{total} from #{@items.length} items\"\n\n");
+        }
+        source.append("window?.").append(name).append(" = ").append(name).append("\n");
+        return source.toString();
+    }
+
+    private static String literate(String source) {
+        StringBuilder literate = new StringBuilder("Generated literate module\n=========================\n\n");
+        for (String block : source.split("\n\n")) {
+            literate.append("The next part of the module.\n\n");
+            for (String line : block.split("\n")) {
+                literate.append("    ").append(line).append('\n');
+            }
+            literate.append('\n');
+        }
+        return literate.toString();
+    }
+
+    private interface Goal {
+        void execute() throws Exception;
+    }
+
+    /**
+     * The wall time, peak heap and bytes allocated by one goal.
+     */
+    private static class Budget {
+        private long millis;
+        private long peakHeapBytes;
+        private long allocatedBytes;
+
+        private static Budget measure(Goal goal) throws Exception {
+            System.gc();
+            BuildReport.resetPeakHeap();
+            long allocated = allocatedBytes();
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            goal.execute();
+
+            Budget budget = new Budget();
+            budget.millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            budget.peakHeapBytes = BuildReport.peakHeapBytes();
+            budget.allocatedBytes = allocatedBytes() - allocated;
+            return budget;
+        }
+
+        /**
+         * The bytes allocated by every thread since the JVM started, including threads that have already finished,
+         * such as the pools a goal shuts down before returning.  getTotalThreadAllocatedBytes needs Java 16, so it
+         * is looked up reflectively, and older JVMs fall back to summing the threads still alive.
+         */
+        private static long allocatedBytes() {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            try {
+                Method total = com.sun.management.ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+                return (Long) total.invoke(threads);
+            } catch (ReflectiveOperationException e) {
+                long allocated = 0;
+                for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                    allocated += Math.max(bytes, 0);
+                }
+                return allocated;
+            }
+        }
+
+        private void check(String description, String goal) {
+            long maxMillis = TimeUnit.SECONDS.toMillis(Long.getLong("scale." + goal + ".maxSeconds", Long.MAX_VALUE / 1000));
+            long maxHeapBytes = Long.getLong("scale." + goal + ".maxHeapMb", Long.MAX_VALUE >> 20) << 20;
+            long maxAllocatedBytes = Long.getLong("scale." + goal + ".maxAllocatedMb", Long.MAX_VALUE >> 20) << 20;
+
+            Reporter.log(String.format("%s over %d files: %d ms, %d MB peak heap, %d MB allocated",
+                                       description, FILES, millis, peakHeapBytes >> 20, allocatedBytes >> 20));
+
+            List<String> exceeded = Lists.newArrayList();
+            if (millis > maxMillis) {
+                exceeded.add(String.format("took %d ms, budget %d ms", millis, maxMillis));
+            }
+            if (peakHeapBytes > maxHeapBytes) {
+                exceeded.add(String.format("peak heap %d MB, budget %d MB", peakHeapBytes >> 20, maxHeapBytes >> 20));
+            }
+            if (allocatedBytes > maxAllocatedBytes) {
+                exceeded.add(String.format("allocated %d MB, budget %d MB", allocatedBytes >> 20, maxAllocatedBytes >> 20));
+            }
+            assertTrue(exceeded.isEmpty(), description + " went over budget: " + Joiner.on("; ").join(exceeded));
+        }
+    }
+
+}
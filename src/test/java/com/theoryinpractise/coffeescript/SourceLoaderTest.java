@@ -0,0 +1,40 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class SourceLoaderTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testSharesDecodedSources() throws Exception {
+        File a = new File(directory, "a.coffee");
+        File b = new File(directory, "b.coffee");
+        Files.asCharSink(a, Charsets.UTF_8).write("a = '\u00e4'");
+        Files.asCharSink(b, Charsets.UTF_8).write("b = 2");
+
+        try (SourceLoader loader = new SourceLoader(4)) {
+            loader.preload(ImmutableList.of(a, b));
+
+            assertEquals(loader.load(a), "a = '\u00e4'");
+            assertSame(loader.load(new File(directory, "../" + directory.getName() + "/a.coffee")), loader.load(a));
+            assertEquals(loader.concatenate(ImmutableList.of(b, a)), "b = 2\na = '\u00e4'\n");
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testMissingFile() throws Exception {
+        try (SourceLoader loader = new SourceLoader(4)) {
+            loader.preload(ImmutableList.of(new File(directory, "missing.coffee")));
+            loader.load(new File(directory, "missing.coffee"));
+        }
+    }
+
+}
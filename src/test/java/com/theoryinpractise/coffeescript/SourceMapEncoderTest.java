@@ -0,0 +1,118 @@
+package com.theoryinpractise.coffeescript;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class SourceMapEncoderTest {
+
+    private static final String SOURCE = "square = (x) ->\n  x * x\n\nalert square 3\n";
+
+    /**
+     * Mappings produced by coffee-script's own javascript SourceMap generation.
+     */
+    @DataProvider
+    public Object[][] provideMappings() {
+        return new Object[][] {
+                {"1.6.1", ";;AAAA;CAAA,KAAA;CAAA;CAAA,CAAA,CAAS,GAAT,GAAU;CACR,EAAI,QAAJ;CADF,EAAS;;CAAT,CAGA,GAAA,CAAM;CAHN"},
+                {"1.6.3", ";AAAA;CAAA,KAAA;;CAAA,CAAA,CAAS,GAAT,GAAU;CACR,EAAI,QAAJ;CADF,EAAS;;CAAT,CAGA,GAAA,CAAM;CAHN"},
+                {"1.10.0", ";AAAA;AAAA,MAAA;;EAAA,MAAA,GAAS,SAAC,CAAD;WACP,CAAA,GAAI;EADG;;EAGT,KAAA,CAAM,MAAA,CAAO,CAAP,CAAN;AAHA"}
+        };
+    }
+
+    @Test(dataProvider = "provideMappings")
+    public void testMatchesCoffeeScript(String version, String mappings) throws Exception {
+        CompileResult result = new CoffeeScriptCompiler(version).compile(SOURCE, new CompileOptions("test.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+
+        JsonNode map = new ObjectMapper().readTree(result.getMap());
+        assertEquals(map.get("version").asInt(), 3);
+        assertEquals(map.get("file").asText(), "test.js");
+        assertEquals(map.get("sources").get(0).asText(), "test.coffee");
+        assertEquals(map.get("mappings").asText(), mappings);
+
+        StringWriter writer = new StringWriter();
+        result.writeMap(writer);
+        assertEquals(writer.toString(), result.getMap());
+    }
+
+    @Test
+    public void testIndexMap() throws Exception {
+        CoffeeScriptCompiler compiler = new CoffeeScriptCompiler("1.10.0");
+        CompileResult first = compiler.compile(SOURCE, new CompileOptions("first.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+        CompileResult second = compiler.compile(SOURCE, new CompileOptions("second.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+
+        // Streamed the way the mojo joins individually compiled files, a file without a map gets no section
+        StringWriter writer = new StringWriter();
+        SourceMapEncoder.writeIndexStart("all.js", writer);
+        assertTrue(SourceMapEncoder.writeIndexSection(0, first, true, writer));
+        assertFalse(SourceMapEncoder.writeIndexSection(6, new CompileResult("var unmapped;\n"), false, writer));
+        assertTrue(SourceMapEncoder.writeIndexSection(12, second, false, writer));
+        SourceMapEncoder.writeIndexEnd(writer);
+
+        JsonNode map = new ObjectMapper().readTree(writer.toString());
+        assertEquals(map.get("version").asInt(), 3);
+        assertEquals(map.get("file").asText(), "all.js");
+        assertEquals(map.get("sections").size(), 2);
+        assertEquals(map.get("sections").get(0).get("offset").get("line").asInt(), 0);
+        assertEquals(map.get("sections").get(0).get("offset").get("column").asInt(), 0);
+        assertEquals(map.get("sections").get(0).get("map").toString(), first.getMap());
+        assertEquals(map.get("sections").get(1).get("offset").get("line").asInt(), 12);
+        assertEquals(map.get("sections").get(1).get("offset").get("column").asInt(), 0);
+        assertEquals(map.get("sections").get(1).get("map").get("sources").get(0).asText(), "second.coffee");
+        assertEquals(map.get("sections").get(1).get("map").toString(), second.getMap());
+    }
+
+    @Test
+    public void testJoinedOutputOffsets() throws Exception {
+        CoffeeScriptCompiler compiler = new CoffeeScriptCompiler("1.10.0");
+        CompileResult first = compiler.compile(SOURCE, new CompileOptions("first.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+        CompileResult second = compiler.compile("cube = (x) -> x * x * x\n", new CompileOptions("second.coffee", false, CoffeeScriptCompiler.SourceMap.V3, true, false));
+
+        BuildReport report = new BuildReport();
+        StringWriter js = new StringWriter();
+        StringWriter mapWriter = new StringWriter();
+        CoffeeScriptCompilerMojo.JoinedOutput joined = new CoffeeScriptCompilerMojo.JoinedOutput("all.js", js, mapWriter, report.unit("joinset", "all"));
+        joined.append(first, report.unit("file", "first.coffee"));
+        joined.append(second, report.unit("file", "second.coffee"));
+        joined.finish();
+        assertEquals(joined.getFiles(), 2);
+
+        // Each section starts on the line of the joined file the output of its own file starts on
+        JsonNode map = new ObjectMapper().readTree(mapWriter.toString());
+        assertEquals(map.get("file").asText(), "all.js");
+        assertEquals(map.get("sections").size(), 2);
+        List<String> lines = Arrays.asList(js.toString().split("\n", -1));
+        int secondLine = map.get("sections").get(1).get("offset").get("line").asInt();
+        assertEquals(map.get("sections").get(0).get("offset").get("line").asInt(), 0);
+        assertEquals(secondLine, first.getJs().split("\n", -1).length);
+        assertEquals(Joiner.on('\n').join(lines.subList(secondLine, lines.size())), second.getJs() + "\n");
+    }
+
+    @Test
+    public void testVlq() throws Exception {
+        assertEquals(vlq(0), "A");
+        assertEquals(vlq(1), "C");
+        assertEquals(vlq(-1), "D");
+        assertEquals(vlq(15), "e");
+        assertEquals(vlq(16), "gB");
+        assertEquals(vlq(-16), "hB");
+        assertEquals(vlq(1000), "w+B");
+    }
+
+    private static String vlq(int value) throws Exception {
+        StringWriter writer = new StringWriter();
+        SourceMapEncoder.writeVlq(writer, value);
+        return writer.toString();
+    }
+
+}
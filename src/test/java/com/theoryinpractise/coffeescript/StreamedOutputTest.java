@@ -0,0 +1,49 @@
+package com.theoryinpractise.coffeescript;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class StreamedOutputTest extends TemporaryDirectoryFixture {
+
+    @Test
+    public void testCommitsOnlyChangedContents() throws Exception {
+        File file = new File(directory, "out/test.js");
+        assertTrue(write(file, "var a = 1;"));
+        assertEquals(Files.asCharSource(file, Charsets.UTF_8).read(), "var a = 1;");
+
+        assertTrue(file.setLastModified(1000000000000L));
+        assertFalse(write(file, "var a = 1;"));
+        assertEquals(file.lastModified(), 1000000000000L);
+
+        assertTrue(write(file, "var a = 2;"));
+        assertEquals(Files.asCharSource(file, Charsets.UTF_8).read(), "var a = 2;");
+        assertEquals(file.getParentFile().list().length, 1);
+    }
+
+    @Test
+    public void testDiscardsUncommittedOutput() throws Exception {
+        File file = new File(directory, "test.js");
+        try (StreamedOutput output = new StreamedOutput(file)) {
+            output.getWriter().write("var a = 1;");
+        }
+        assertFalse(file.exists());
+        assertEquals(file.getParentFile().list().length, 0);
+    }
+
+    private static boolean write(File file, String contents) throws Exception {
+        try (StreamedOutput output = new StreamedOutput(file)) {
+            output.getWriter().write(contents);
+            boolean changed = output.commit();
+            assertEquals(output.getBytes(), contents.getBytes(Charsets.UTF_8).length);
+            return changed;
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.theoryinpractise.coffeescript;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Gives every test method a fresh temporary directory, deleted again once the method has run.
+ */
+public abstract class TemporaryDirectoryFixture {
+
+    protected File directory;
+
+    @BeforeMethod(alwaysRun = true)
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteDirectory() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+}